@@ -0,0 +1,70 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.audit.AuditEvent;
+import com.halfnet.myyearbook.webservice.audit.AuditLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the time {@link AuditLog#record} adds to a request, on one thread and on
+ * every CPU, with the writer thread appending to a temporary directory
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AuditLogBenchmark {
+
+    private static final String TOKEN = "0123456789abcdef0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    @Param({"none", "always"})
+    public String fsync;
+
+    private Path dir;
+    private AuditLog auditLog;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("myyb-audit-benchmark");
+        auditLog = new AuditLog(true, dir.toString(), 64 << 20, 65536, fsync, 1000, new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordOneThread() {
+        auditLog.record(AuditEvent.TOKEN_ISSUED, 42, "192.168.1.20", TOKEN);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void recordAllThreads() {
+        auditLog.record(AuditEvent.PASSWORD_FAILED, 42, "192.168.1.20", null);
+    }
+}
@@ -0,0 +1,53 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.concurrent.TimeUnit;
+import org.mindrot.jbcrypt.BCrypt;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link Utils#hashPassword} and {@link Utils#checkPassword} at several
+ * BCrypt costs
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 2)
+public class BCryptBenchmark {
+
+    private static final String PASSWORD = "correct horse battery";
+
+    @Param({"4", "8", "10", "12"})
+    public int cost;
+
+    private String salt;
+    private String hash;
+
+    @Setup
+    public void setup() {
+        salt = BCrypt.gensalt(cost);
+        hash = Utils.hashPassword(PASSWORD, salt);
+    }
+
+    @Benchmark
+    public String hashPassword() {
+        return Utils.hashPassword(PASSWORD, salt);
+    }
+
+    @Benchmark
+    public boolean checkPassword() {
+        return Utils.checkPassword(PASSWORD, hash);
+    }
+}
@@ -0,0 +1,56 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+/**
+ * the webservice's managers and repositories on top of an in memory H2
+ * database, without the web server or scheduled jobs. The audit log goes to
+ * the temporary directory
+ */
+@SpringBootApplication(scanBasePackages = {
+    "com.halfnet.myyearbook.webservice.audit",
+    "com.halfnet.myyearbook.webservice.datasource",
+    "com.halfnet.myyearbook.webservice.manager",
+    "com.halfnet.myyearbook.webservice.metrics"})
+@EntityScan("com.halfnet.myyearbook.webservice.entity")
+@EnableJpaRepositories("com.halfnet.myyearbook.webservice.repo")
+public class BenchmarkApplication {
+
+    /**
+     * starts a context with a fresh database
+     *
+     * @param name the name of the in memory database
+     * @param args more properties, such as {@code --webservice.replica.urls=}
+     * @return the running context
+     */
+    public static ConfigurableApplicationContext start(String name, String... args) {
+        List<String> all = new ArrayList<>(List.of(
+                "--spring.datasource.url=" + h2Url(name),
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.jpa.hibernate.ddl-auto=create",
+                "--spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+                "--webservice.audit.dir=" + Path.of(System.getProperty("java.io.tmpdir"), "myyb-audit-" + name),
+                "--logging.level.root=WARN"));
+        all.addAll(List.of(args));
+        return new SpringApplicationBuilder(BenchmarkApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run(all.toArray(new String[0]));
+    }
+
+    /**
+     * @param name the name of an in memory database
+     * @return the url of the database, kept open until the JVM exits
+     */
+    public static String h2Url(String name) {
+        return "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+    }
+}
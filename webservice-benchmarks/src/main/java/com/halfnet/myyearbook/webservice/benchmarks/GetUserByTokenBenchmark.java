@@ -0,0 +1,100 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.manager.TokenCache;
+import com.halfnet.myyearbook.webservice.manager.UserManager;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.repo.UserRepo;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * {@link UserManager#getUserByToken} end to end against an in memory
+ * database, with the token cache warm and with it cleared before every
+ * lookup, for random tokens and for signed tokens
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class GetUserByTokenBenchmark {
+
+    private static final int USERS = 1000;
+
+    @Param({"random", "signed"})
+    public String tokens;
+
+    private ConfigurableApplicationContext context;
+    private UserManager userManager;
+    private TokenCache tokenCache;
+    private String[] issued;
+    private int next;
+
+    @Setup
+    public void setup() {
+        context = "signed".equals(tokens)
+                ? BenchmarkApplication.start("getUserByToken",
+                        "--webservice.signed-tokens.enabled=true",
+                        "--webservice.signed-tokens.keys=k1:" + Base64.getEncoder().encodeToString(new byte[32]),
+                        "--webservice.signed-tokens.active-key=k1")
+                : BenchmarkApplication.start("getUserByToken");
+        userManager = context.getBean(UserManager.class);
+        tokenCache = context.getBean(TokenCache.class);
+        UserRepo userRepo = context.getBean(UserRepo.class);
+
+        issued = new String[USERS];
+        for (int i = 0; i < USERS; i++) {
+            User u = new User("first" + i, "last" + i, "benchmark.user" + i);
+            u.setPasswordHash("");
+            u = userRepo.save(u);
+            issued[i] = userManager.loginUser(u.getId());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private String nextToken() {
+        next = (next + 1) % USERS;
+        return issued[next];
+    }
+
+    @Benchmark
+    public User cached() {
+        return userManager.getUserByToken(nextToken());
+    }
+
+    @Benchmark
+    public User uncached() {
+        tokenCache.invalidateAll();
+        return userManager.getUserByToken(nextToken());
+    }
+
+    @Benchmark
+    public TokenPrincipal principalUncached() {
+        tokenCache.invalidateAll();
+        return userManager.getPrincipalByToken(nextToken());
+    }
+
+    @Benchmark
+    public User unknownToken() {
+        return userManager.getUserByToken("not a token");
+    }
+}
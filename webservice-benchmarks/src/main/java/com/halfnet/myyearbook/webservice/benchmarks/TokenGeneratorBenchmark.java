@@ -0,0 +1,43 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.util.TokenGenerator;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * token generation throughput on one thread and on every CPU, the second
+ * should be close to the first times the number of CPUs
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TokenGeneratorBenchmark {
+
+    @Benchmark
+    @Threads(1)
+    public String tokenOneThread() {
+        return TokenGenerator.generate(Utils.TOKEN_LENGTH);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String tokenAllThreads() {
+        return TokenGenerator.generate(Utils.TOKEN_LENGTH);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String resetCodeAllThreads() {
+        return TokenGenerator.generate(Utils.PASSWORD_RESET_LENGTH);
+    }
+}
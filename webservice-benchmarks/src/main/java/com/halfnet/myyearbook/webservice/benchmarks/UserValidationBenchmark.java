@@ -0,0 +1,48 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.manager.UserManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the signup validation checks in {@link UserManager}, which don't touch the
+ * database
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UserValidationBenchmark {
+
+    @Param({"john.smith_2020", "self", "not a valid email!"})
+    public String email;
+
+    private UserManager userManager;
+
+    @Setup
+    public void setup() {
+        userManager = new UserManager();
+    }
+
+    @Benchmark
+    public boolean emailMatchesCustomReqs() {
+        return userManager.emailMatchesCustomReqs(email);
+    }
+
+    @Benchmark
+    public boolean passwordMatchesCustomReqs() {
+        return userManager.passwordMatchesCustomReqs(email);
+    }
+}
@@ -0,0 +1,68 @@
+package com.halfnet.myyearbook.webservice.benchmarks;
+
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the non BCrypt helpers in {@link Utils}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class UtilsBenchmark {
+
+    private Throwable exception;
+
+    @Setup
+    public void setup() {
+        exception = new IllegalStateException("benchmark");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return Utils.generateToken();
+    }
+
+    @Benchmark
+    public String genPasswordReset() {
+        return Utils.genPasswordReset();
+    }
+
+    @Benchmark
+    public byte[] digestToken() {
+        return Utils.digestToken("bzLq0mF7Rw2wG6s0k1bq7oTz3yZ9hVnXQ4c8p5dJ");
+    }
+
+    @Benchmark
+    public String getHTTPDate() {
+        return Utils.getHTTPDate();
+    }
+
+    @Benchmark
+    public String getHTTPDateWithOffset() {
+        return Utils.getHTTPDate(3600000);
+    }
+
+    @Benchmark
+    public String getTimeNoDate() {
+        return Utils.getTimeNoDate();
+    }
+
+    @Benchmark
+    public String exceptionStackTraceToString() {
+        return Utils.exceptionStackTraceToString(exception);
+    }
+}
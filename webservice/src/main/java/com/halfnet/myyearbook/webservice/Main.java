@@ -1,5 +1,6 @@
 package com.halfnet.myyearbook.webservice;
 
+import com.halfnet.myyearbook.webservice.metrics.StartupTimings;
 import com.halfnet.myyearbook.webservice.util.LoggingConstants;
 import javax.annotation.PostConstruct;
 import org.apache.commons.logging.Log;
@@ -7,13 +8,14 @@ import org.apache.commons.logging.LogFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
-@ComponentScan
-@EntityScan({"com.halfnet.myyearbook.webservice.entities"})
-@EnableJpaRepositories({"com.halfnet.myyearbook.webservice.repos"})
+@EntityScan("com.halfnet.myyearbook.webservice.entity")
+@EnableJpaRepositories("com.halfnet.myyearbook.webservice.repo")
+@EnableScheduling
 public class Main {
     
     private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
@@ -24,6 +26,12 @@ public class Main {
     }
     
     public static void main(String[] args) {
-        SpringApplication.run(Main.class, args);
+        SpringApplication app = new SpringApplication(Main.class);
+        app.addListeners(new StartupTimings());
+        ConfigurableApplicationContext context = app.run(args);
+        // the build's AppCDS training run only needs the classes loaded while starting
+        if (context.getEnvironment().getProperty("webservice.startup.exit-when-ready", Boolean.class, false)) {
+            System.exit(SpringApplication.exit(context));
+        }
     }
 }
@@ -0,0 +1,51 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+/**
+ * the kinds of authentication events in the audit log<br>
+ * codes are stored in the log, never change or reuse them
+ */
+public enum AuditEvent {
+
+    PASSWORD_OK(1),
+    PASSWORD_FAILED(2),
+    LOGIN_THROTTLED(3),
+    TOKEN_ISSUED(4),
+    LOGOUT(5),
+    TOKEN_REVOKED(6),
+    USER_TOKENS_REVOKED(7),
+    PASSWORD_CHANGED(8),
+    PASSWORD_RESET_REQUESTED(9),
+    PASSWORD_RESET_OK(10),
+    PASSWORD_RESET_FAILED(11),
+    USER_DEACTIVATED(12),
+    USER_PURGED(13),
+    // written by the log itself, the user id field holds how many events
+    // were dropped because the ring was full
+    DROPPED(127);
+
+    private static final AuditEvent[] BY_CODE = new AuditEvent[128];
+
+    static {
+        for (AuditEvent e : values()) {
+            BY_CODE[e.code] = e;
+        }
+    }
+
+    private final byte code;
+
+    private AuditEvent(int code) {
+        this.code = (byte) code;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    /**
+     * @param code a code read from the log
+     * @return the event with the code, or null if unknown
+     */
+    public static AuditEvent fromCode(byte code) {
+        return code < 0 ? null : BY_CODE[code];
+    }
+}
@@ -0,0 +1,260 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import javax.annotation.PreDestroy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * an append only record of authentication events in
+ * {@code webservice.audit.dir}, read back with {@link AuditReader}<br>
+ * {@link #record} only puts the event in a ring, a single writer thread
+ * digests tokens, parses addresses and appends the records to memory mapped
+ * segment files. When the writer falls a whole ring behind, events are
+ * dropped and the log gets a {@link AuditEvent#DROPPED} record with the
+ * count.<br>
+ * records reach the file as soon as the writer drains them and survive the
+ * process crashing. {@code webservice.audit.fsync} decides when they are
+ * also forced to the disk: {@code none} leaves it to the OS,
+ * {@code interval} forces every {@code webservice.audit.fsync-interval} ms
+ * and {@code always} after every drained batch<br>
+ * an event that can't be written is skipped and counted, and the writer
+ * backs off before trying the next ones
+ */
+@Component
+public class AuditLog {
+
+    private static final int BATCH = 1024;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    private final Path dir;
+    private final AuditRing ring;
+    private final AuditSegments segments;
+    private final Fsync fsync;
+    private final long fsyncInterval;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    private final Counter[] written = new Counter[128];
+    private final Counter dropped;
+    private final Counter failedWrites;
+    private final Counter failedForces;
+    private final Timer fsyncTimer;
+    // dropped events whose DROPPED record couldn't be written yet, used by the writer only
+    private long unrecordedDrops;
+
+    public AuditLog(@Value("${webservice.audit.enabled:true}") boolean enabled,
+            @Value("${webservice.audit.dir:audit}") String dir,
+            @Value("${webservice.audit.segment-size:67108864}") int segmentSize,
+            @Value("${webservice.audit.ring-size:65536}") int ringSize,
+            @Value("${webservice.audit.fsync:interval}") String fsync,
+            @Value("${webservice.audit.fsync-interval:1000}") long fsyncInterval,
+            MeterRegistry registry) throws IOException {
+        this.dir = Path.of(dir);
+        this.fsync = Fsync.valueOf(fsync.toUpperCase());
+        this.fsyncInterval = fsyncInterval;
+        for (AuditEvent e : AuditEvent.values()) {
+            written[e.getCode()] = registry.counter(MetricsConstants.AUDIT_EVENTS, "event", e.name().toLowerCase());
+        }
+        this.dropped = registry.counter(MetricsConstants.AUDIT_DROPPED);
+        this.failedWrites = registry.counter(MetricsConstants.AUDIT_FAILED, "op", "write");
+        this.failedForces = registry.counter(MetricsConstants.AUDIT_FAILED, "op", "force");
+        this.fsyncTimer = registry.timer(MetricsConstants.AUDIT_FSYNC);
+        if (!enabled) {
+            this.ring = null;
+            this.segments = null;
+            this.writer = null;
+            return;
+        }
+        this.ring = new AuditRing(ringSize);
+        this.segments = new AuditSegments(this.dir, segmentSize);
+        registry.gauge(MetricsConstants.AUDIT_BACKLOG, this, AuditLog::getBacklog);
+        log.info("Audit log in " + this.dir.toAbsolutePath() + " continues at sequence " + segments.getNextSequence());
+        this.writer = new Thread(this::run, "audit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * records an event, never blocks
+     *
+     * @param event what happened
+     * @param userId the user it happened to, or 0 if unknown
+     * @param clientAddress the address of the client, or null if unknown
+     * @param token the token involved, or null. Only a digest is stored
+     */
+    public void record(AuditEvent event, long userId, String clientAddress, String token) {
+        if (ring != null) {
+            ring.offer(event.getCode(), System.currentTimeMillis(), userId, clientAddress, token);
+        }
+    }
+
+    /**
+     * @return true if events are being written
+     */
+    public boolean isEnabled() {
+        return ring != null;
+    }
+
+    /**
+     * @return the directory of the segment files
+     */
+    public Path getDir() {
+        return dir;
+    }
+
+    /**
+     * @return the number of events waiting for the writer
+     */
+    public int getBacklog() {
+        return ring == null ? 0 : ring.size();
+    }
+
+    private void run() {
+        long lastForce = System.currentTimeMillis();
+        long backoff = 0;
+        while (true) {
+            if (Thread.currentThread().isInterrupted()) {
+                abandon();
+                return;
+            }
+            boolean stopping = !running;
+            int n = 0;
+            try {
+                n = ring.drain(this::write, BATCH);
+                unrecordedDrops += ring.takeDropped();
+                if (unrecordedDrops > 0) {
+                    segments.append(AuditEvent.DROPPED.getCode(), System.currentTimeMillis(), unrecordedDrops, null, null);
+                    dropped.increment(unrecordedDrops);
+                    log.warn("Audit ring full, dropped " + unrecordedDrops + " events");
+                    unrecordedDrops = 0;
+                }
+                long now = System.currentTimeMillis();
+                if (fsync == Fsync.ALWAYS && n > 0
+                        || fsync == Fsync.INTERVAL && now - lastForce >= fsyncInterval && segments.isDirty()) {
+                    try {
+                        fsyncTimer.record(segments::force);
+                    } catch (RuntimeException e) {
+                        failedForces.increment();
+                        throw e;
+                    }
+                    lastForce = now;
+                }
+                backoff = 0;
+            } catch (IOException | RuntimeException e) {
+                // the event being written has been skipped, events behind it wait in the ring meanwhile
+                if (backoff == 0) {
+                    log.error("Could not write the audit log: " + Utils.exceptionStackTraceToString(e));
+                    backoff = MIN_BACKOFF_NANOS;
+                } else {
+                    log.error("Could not write the audit log: " + e.getMessage());
+                    backoff = Math.min(MAX_BACKOFF_NANOS, backoff * 2);
+                }
+                LockSupport.parkNanos(backoff);
+                continue;
+            }
+            if (n == 0) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * counts and logs the events that will never be written, when the writer
+     * is stopped before it could drain them
+     */
+    private void abandon() {
+        long lost = ring.size() + ring.takeDropped() + unrecordedDrops;
+        if (lost > 0) {
+            dropped.increment(lost);
+            log.error("Audit writer stopped with " + lost + " events not written");
+        }
+    }
+
+    private void write(byte code, long time, long userId, String address, String token) {
+        try {
+            segments.append(code, time, userId, parseAddress(address), token == null ? null : Utils.digestToken(token));
+        } catch (IOException e) {
+            failedWrites.increment();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            failedWrites.increment();
+            throw e;
+        }
+        written[code].increment();
+    }
+
+    /**
+     * @return the bytes of an IP address literal, or null for anything else,
+     * which is never looked up
+     */
+    static byte[] parseAddress(String address) {
+        if (address == null || address.isEmpty() || address.length() > 45) {
+            return null;
+        }
+        if (address.indexOf(':') < 0) {
+            int dots = 0;
+            for (int i = 0; i < address.length(); i++) {
+                char c = address.charAt(i);
+                if (c == '.') {
+                    dots++;
+                } else if (c < '0' || c > '9') {
+                    return null;
+                }
+            }
+            if (dots != 3) {
+                return null;
+            }
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    @PreDestroy
+    private void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        if (writer.isAlive()) {
+            // still draining or backing off from errors, it counts what it gives up on
+            writer.interrupt();
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        }
+        if (writer.isAlive()) {
+            // unmapping the segments under the writer could crash the JVM
+            log.error("Audit writer did not stop, leaving its segments open");
+            return;
+        }
+        segments.close();
+    }
+
+    private enum Fsync {
+        NONE, INTERVAL, ALWAYS
+    }
+}
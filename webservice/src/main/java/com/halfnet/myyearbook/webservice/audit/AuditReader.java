@@ -0,0 +1,139 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * reads an audit log back in sequence order, also while it is being
+ * written<br>
+ * as a tool, exports a log as CSV or JSON lines:
+ * <pre>
+ * java -cp MyYearbook-1.0.jar com.halfnet.myyearbook.webservice.audit.AuditReader
+ *     &lt;dir&gt; [--from &lt;sequence&gt;] [--format csv|json]
+ * </pre>
+ */
+public class AuditReader {
+
+    private AuditReader() {
+
+    }
+
+    /**
+     * hands every record from a sequence on to a consumer
+     *
+     * @param dir the directory of the segment files
+     * @param fromSequence the first sequence wanted, 1 for all
+     * @param consumer receives the records in order
+     * @return the number of records handed over
+     * @throws IOException if a segment can't be read
+     */
+    public static long read(Path dir, long fromSequence, Consumer<AuditRecord> consumer) throws IOException {
+        List<Path> segments = AuditSegments.list(dir);
+        CRC32C crc = new CRC32C();
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (i + 1 < segments.size() && firstSequence(segments.get(i + 1)) <= fromSequence) {
+                continue;
+            }
+            try (FileChannel ch = FileChannel.open(segments.get(i), StandardOpenOption.READ)) {
+                MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                buf.order(AuditRecord.ORDER);
+                if (AuditRecord.readHeader(buf) < 0) {
+                    continue;
+                }
+                for (int pos = AuditRecord.SIZE; pos + AuditRecord.SIZE <= buf.capacity(); pos += AuditRecord.SIZE) {
+                    AuditRecord r = AuditRecord.read(buf, pos, crc);
+                    if (r == null) {
+                        break;
+                    }
+                    if (r.getSequence() >= fromSequence) {
+                        consumer.accept(r);
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.replaceAll("\\D", ""));
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: AuditReader <dir> [--from <sequence>] [--format csv|json]");
+            System.exit(2);
+        }
+        Path dir = Path.of(args[0]);
+        long from = 1;
+        boolean json = false;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if ("--from".equals(args[i])) {
+                from = Long.parseLong(args[i + 1]);
+            } else if ("--format".equals(args[i])) {
+                json = "json".equalsIgnoreCase(args[i + 1]);
+            }
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        if (!json) {
+            out.write("sequence,time,event,user_id,address,token_hash_prefix\n");
+        }
+        boolean asJson = json;
+        try {
+            read(dir, from, r -> {
+                try {
+                    out.write(asJson ? toJson(r) : toCsv(r));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static String toCsv(AuditRecord r) {
+        InetAddress address = r.getAddress();
+        return r.getSequence() + "," + Instant.ofEpochMilli(r.getTime()) + "," + eventName(r) + "," + r.getUserId()
+                + "," + (address == null ? "" : address.getHostAddress()) + "," + subject(r);
+    }
+
+    private static String toJson(AuditRecord r) {
+        InetAddress address = r.getAddress();
+        return "{\"sequence\":" + r.getSequence() + ",\"time\":\"" + Instant.ofEpochMilli(r.getTime())
+                + "\",\"event\":\"" + eventName(r) + "\",\"user_id\":" + r.getUserId()
+                + ",\"address\":" + (address == null ? "null" : "\"" + address.getHostAddress() + "\"")
+                + ",\"token_hash_prefix\":" + (r.hasSubject() ? "\"" + subject(r) + "\"" : "null") + "}";
+    }
+
+    private static String eventName(AuditRecord r) {
+        return r.getEvent() == null ? "UNKNOWN" : r.getEvent().name();
+    }
+
+    private static String subject(AuditRecord r) {
+        if (!r.hasSubject()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(AuditRecord.SUBJECT_LENGTH * 2);
+        for (byte b : r.getSubject()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,185 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * one event read back from the audit log, and the binary layout shared by
+ * the writer and the reader<br>
+ * a segment starts with a {@link #SIZE} byte header, followed by records of
+ * {@link #SIZE} bytes each, little endian:
+ * <pre>
+ *  0 int    CRC32C of bytes 4 to 63
+ *  4 byte   event code, see {@link AuditEvent}
+ *  5 byte   length of the client address, 0, 4 or 16
+ *  6 short  0
+ *  8 long   sequence, from 1 and without gaps, 0 marks the end
+ * 16 long   time in milliseconds since the epoch
+ * 24 long   user id, 0 if unknown
+ * 32 16byte client address
+ * 48 16byte first 16 bytes of the token's SHA-256, as in myyb_token.token_hash
+ * </pre>
+ * a record whose CRC doesn't match was being written when the process
+ * stopped, and ends the segment like an empty one
+ */
+public class AuditRecord {
+
+    public static final int SIZE = 64;
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    // segment header: magic, version, record size, first sequence, created
+    static final long MAGIC = 0x314455414259594dL; // "MYYBAUD1" on disk
+    static final int VERSION = 1;
+
+    static final int ADDRESS_LENGTH = 16;
+    static final int SUBJECT_LENGTH = 16;
+
+    private final long sequence;
+    private final long time;
+    private final AuditEvent event;
+    private final long userId;
+    private final byte[] address;
+    private final byte[] subject;
+
+    public AuditRecord(long sequence, long time, AuditEvent event, long userId, byte[] address, byte[] subject) {
+        this.sequence = sequence;
+        this.time = time;
+        this.event = event;
+        this.userId = userId;
+        this.address = address;
+        this.subject = subject;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the event, or null if this log was written by a newer version
+     */
+    public AuditEvent getEvent() {
+        return event;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * @return the client address, or null if unknown
+     */
+    public InetAddress getAddress() {
+        if (address.length == 0) {
+            return null;
+        }
+        try {
+            return InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the token digest prefix, all zero if the event has no token
+     */
+    public byte[] getSubject() {
+        return subject.clone();
+    }
+
+    /**
+     * @return true if the event has a token
+     */
+    public boolean hasSubject() {
+        for (byte b : subject) {
+            if (b != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static void writeHeader(ByteBuffer buf, long firstSequence, long created) {
+        buf.putLong(0, MAGIC);
+        buf.putInt(8, VERSION);
+        buf.putInt(12, SIZE);
+        buf.putLong(16, firstSequence);
+        buf.putLong(24, created);
+    }
+
+    /**
+     * @return the first sequence of the segment, or -1 if the header isn't
+     * one this version understands
+     */
+    static long readHeader(ByteBuffer buf) {
+        if (buf.limit() < SIZE || buf.getLong(0) != MAGIC || buf.getInt(8) != VERSION || buf.getInt(12) != SIZE) {
+            return -1;
+        }
+        return buf.getLong(16);
+    }
+
+    /**
+     * writes a record at an offset without moving the buffer's position
+     *
+     * @param address 0, 4 or 16 bytes, or null
+     * @param subject at least 16 bytes of which the first 16 are stored, or
+     * null
+     */
+    static void write(ByteBuffer buf, int offset, CRC32C crc, byte code, long sequence, long time, long userId,
+            byte[] address, byte[] subject) {
+        int addressLength = address == null ? 0 : address.length;
+        buf.put(offset + 4, code);
+        buf.put(offset + 5, (byte) addressLength);
+        buf.putShort(offset + 6, (short) 0);
+        buf.putLong(offset + 8, sequence);
+        buf.putLong(offset + 16, time);
+        buf.putLong(offset + 24, userId);
+        for (int i = 0; i < ADDRESS_LENGTH; i++) {
+            buf.put(offset + 32 + i, i < addressLength ? address[i] : 0);
+        }
+        for (int i = 0; i < SUBJECT_LENGTH; i++) {
+            buf.put(offset + 48 + i, subject == null ? 0 : subject[i]);
+        }
+        buf.putInt(offset, checksum(buf, offset, crc));
+    }
+
+    /**
+     * @return the record at an offset, or null if it is empty or torn
+     */
+    static AuditRecord read(ByteBuffer buf, int offset, CRC32C crc) {
+        long sequence = buf.getLong(offset + 8);
+        if (sequence == 0 || buf.getInt(offset) != checksum(buf, offset, crc)) {
+            return null;
+        }
+        int addressLength = buf.get(offset + 5);
+        byte[] address = new byte[addressLength == 4 || addressLength == 16 ? addressLength : 0];
+        byte[] subject = new byte[SUBJECT_LENGTH];
+        for (int i = 0; i < address.length; i++) {
+            address[i] = buf.get(offset + 32 + i);
+        }
+        for (int i = 0; i < SUBJECT_LENGTH; i++) {
+            subject[i] = buf.get(offset + 48 + i);
+        }
+        return new AuditRecord(sequence, buf.getLong(offset + 16), AuditEvent.fromCode(buf.get(offset + 4)),
+                buf.getLong(offset + 24), address, subject);
+    }
+
+    private static int checksum(ByteBuffer buf, int offset, CRC32C crc) {
+        crc.reset();
+        crc.update(buf.duplicate().limit(offset + SIZE).position(offset + 4));
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public String toString() {
+        return "AuditRecord{" + "sequence=" + sequence + ", time=" + time + ", event=" + event
+                + ", userId=" + userId + ", address=" + getAddress() + ", subject=" + Arrays.toString(subject) + '}';
+    }
+}
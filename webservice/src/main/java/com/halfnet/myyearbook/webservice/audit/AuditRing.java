@@ -0,0 +1,126 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a bounded lock-free queue of audit events from many threads to one
+ * consumer, with the fields of every slot allocated up front<br>
+ * producers claim a sequence with a CAS, fill the slot and then publish it,
+ * so an offer costs a CAS and a few stores and never waits or allocates.
+ * When the consumer is a whole ring behind, offers fail and are counted
+ * instead
+ */
+class AuditRing {
+
+    private final int mask;
+    private final byte[] codes;
+    private final long[] times;
+    private final long[] userIds;
+    private final String[] addresses;
+    private final String[] tokens;
+    // slot -> sequence + 1 of the event published in it
+    private final AtomicLongArray published;
+
+    private final AtomicLong claimed = new AtomicLong();
+    // written by the consumer only
+    private volatile long consumed;
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity the number of slots, rounded up to a power of 2
+     */
+    AuditRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mask = size - 1;
+        this.codes = new byte[size];
+        this.times = new long[size];
+        this.userIds = new long[size];
+        this.addresses = new String[size];
+        this.tokens = new String[size];
+        this.published = new AtomicLongArray(size);
+    }
+
+    /**
+     * @return false if the ring was full and the event was dropped
+     */
+    boolean offer(byte code, long time, long userId, String address, String token) {
+        long seq;
+        do {
+            seq = claimed.get();
+            if (seq - consumed > mask) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(seq, seq + 1));
+        int i = (int) seq & mask;
+        codes[i] = code;
+        times[i] = time;
+        userIds[i] = userId;
+        addresses[i] = address;
+        tokens[i] = token;
+        published.lazySet(i, seq + 1);
+        return true;
+    }
+
+    /**
+     * hands published events to a handler in order, stopping at the first
+     * slot that is claimed but not yet filled<br>
+     * an event is consumed even if the handler throws, so a bad event is
+     * never handed over again. Only one thread may drain
+     *
+     * @param max the most events to hand over
+     * @return the number of events handed over
+     */
+    int drain(Handler handler, int max) {
+        long next = consumed;
+        int n = 0;
+        try {
+            while (n < max) {
+                int i = (int) next & mask;
+                if (published.get(i) != next + 1) {
+                    break;
+                }
+                try {
+                    handler.on(codes[i], times[i], userIds[i], addresses[i], tokens[i]);
+                } finally {
+                    addresses[i] = null;
+                    tokens[i] = null;
+                    next++;
+                    n++;
+                }
+                // let producers reuse slots during long drains
+                if ((n & 255) == 0) {
+                    consumed = next;
+                }
+            }
+        } finally {
+            consumed = next;
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of events dropped since the last call
+     */
+    long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    /**
+     * @return the number of events waiting to be drained
+     */
+    int size() {
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+
+    @FunctionalInterface
+    interface Handler {
+
+        void on(byte code, long time, long userId, String address, String token);
+    }
+}
@@ -0,0 +1,177 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * the segment files of an audit log, written through a memory mapping<br>
+ * segments are created at their full size and named after their first
+ * sequence, so they sort in order. When opened again the last segment is
+ * scanned for its first empty or torn record and appended to from there.
+ * Not thread safe, only the audit writer thread uses it
+ */
+class AuditSegments implements AutoCloseable {
+
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".seg";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final CRC32C crc = new CRC32C();
+
+    private FileChannel channel;
+    private MappedByteBuffer buf;
+    private int position;
+    // start of the bytes written since the last force
+    private int unforced;
+    private long nextSequence;
+
+    /**
+     * @param dir the directory, created if missing
+     * @param segmentSize the size of each segment in bytes, rounded down to a
+     * whole number of records
+     */
+    AuditSegments(Path dir, int segmentSize) throws IOException {
+        this.dir = dir;
+        this.segmentSize = Math.max(2, segmentSize / AuditRecord.SIZE) * AuditRecord.SIZE;
+        Files.createDirectories(dir);
+        List<Path> segments = list(dir);
+        nextSequence = 1;
+        if (!segments.isEmpty()) {
+            resume(segments.get(segments.size() - 1));
+        }
+        if (buf == null || position >= buf.capacity()) {
+            rotate();
+        }
+    }
+
+    /**
+     * @return the segments in a directory, oldest first
+     */
+    static List<Path> list(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+            }).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private void resume(Path last) throws IOException {
+        FileChannel ch = FileChannel.open(last, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // an empty file was created but never mapped
+        long size = ch.size() < AuditRecord.SIZE ? segmentSize : ch.size();
+        MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        b.order(AuditRecord.ORDER);
+        long first = AuditRecord.readHeader(b);
+        if (first < 0 && b.getLong(0) == 0) {
+            // created just before the process stopped, the name has the first sequence
+            String name = last.getFileName().toString();
+            first = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            AuditRecord.writeHeader(b, first, System.currentTimeMillis());
+        } else if (first < 0) {
+            ch.close();
+            throw new IOException("Not an audit segment: " + last);
+        }
+        int pos = AuditRecord.SIZE;
+        long seq = first;
+        while (pos + AuditRecord.SIZE <= b.capacity()) {
+            AuditRecord r = AuditRecord.read(b, pos, crc);
+            if (r == null || r.getSequence() != seq) {
+                break;
+            }
+            seq++;
+            pos += AuditRecord.SIZE;
+        }
+        channel = ch;
+        buf = b;
+        position = pos;
+        unforced = pos;
+        nextSequence = seq;
+    }
+
+    private void rotate() throws IOException {
+        closeCurrent();
+        Path path = dir.resolve(String.format("%s%020d%s", PREFIX, nextSequence, SUFFIX));
+        FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        MappedByteBuffer b;
+        try {
+            b = ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException | RuntimeException e) {
+            // so that the next append can create it again
+            ch.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        channel = ch;
+        buf = b;
+        buf.order(AuditRecord.ORDER);
+        AuditRecord.writeHeader(buf, nextSequence, System.currentTimeMillis());
+        position = AuditRecord.SIZE;
+        unforced = 0;
+    }
+
+    /**
+     * appends a record, starting a new segment when this one is full or a
+     * previous one couldn't be started
+     */
+    void append(byte code, long time, long userId, byte[] address, byte[] subject) throws IOException {
+        if (buf == null || position + AuditRecord.SIZE > buf.capacity()) {
+            rotate();
+        }
+        AuditRecord.write(buf, position, crc, code, nextSequence, time, userId, address, subject);
+        position += AuditRecord.SIZE;
+        nextSequence++;
+    }
+
+    /**
+     * @return true if records were appended since the last {@link #force}
+     */
+    boolean isDirty() {
+        return position > unforced;
+    }
+
+    /**
+     * writes the records appended since the last call to the disk
+     */
+    void force() {
+        if (isDirty()) {
+            buf.force(unforced, position - unforced);
+            unforced = position;
+        }
+    }
+
+    /**
+     * @return the sequence the next record will get
+     */
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    private void closeCurrent() throws IOException {
+        if (channel != null) {
+            force();
+            // the mapping itself is released once the buffer is collected
+            channel.close();
+            channel = null;
+            buf = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+}
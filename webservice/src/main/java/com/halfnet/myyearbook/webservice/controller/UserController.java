@@ -1,10 +1,250 @@
 package com.halfnet.myyearbook.webservice.controller;
 
+import com.halfnet.myyearbook.webservice.manager.BulkUserDeleter;
+import com.halfnet.myyearbook.webservice.manager.UserManager;
+import com.halfnet.myyearbook.webservice.projection.UserSummary;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 @RestController
 @CrossOrigin
 public class UserController {
 
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private UserManager userManager;
+
+    /**
+     * logs in with an email and password, attempts are limited per account
+     * and per client address
+     *
+     * @param email the email of the user
+     * @param password the password
+     * @param request the request, for the client's address
+     * @return the new token as JSON, or 401 if the email or password is
+     * wrong
+     */
+    @PostMapping(value = "/login", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> login(@RequestParam String email, @RequestParam String password,
+            HttpServletRequest request) {
+        String token = userManager.login(email, password, request.getRemoteAddr());
+        if (token == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(new JSONObject().put("token", token).toString());
+    }
+
+    /**
+     * gets a page of users, the response's {@code next} is the {@code after}
+     * of the following page, or absent on the last page<br>
+     * only administrators may list users
+     *
+     * @param token the token of an administrator
+     * @param after the id to start after
+     * @param limit the page size, at most 1000
+     * @return the page as JSON
+     */
+    @GetMapping(value = "/users", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<String> getUsers(@RequestHeader("token") String token,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") int limit) {
+        if (!userManager.isLoggedIn(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!userManager.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        List<UserSummary> users = userManager.getUserPage(after, limit);
+        JSONArray arr = new JSONArray();
+        for (UserSummary u : users) {
+            arr.put(u.toJSON());
+        }
+        JSONObject ret = new JSONObject().put("users", arr);
+        if (users.size() == limit) {
+            ret.put("next", users.get(users.size() - 1).getId());
+        }
+        return ResponseEntity.ok(ret.toString());
+    }
+
+    /**
+     * streams every user as newline delimited JSON<br>
+     * only administrators may list users
+     *
+     * @param token the token of an administrator
+     * @return the users, one JSON object per line
+     */
+    @GetMapping("/users/stream")
+    public ResponseEntity<StreamingResponseBody> streamUsers(@RequestHeader("token") String token) {
+        if (!userManager.isLoggedIn(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!userManager.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            try {
+                userManager.forEachUser(u -> {
+                    try {
+                        w.write(u.toJSON().toString());
+                        w.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            w.flush();
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
+
+    /**
+     * imports users from a CSV or newline delimited JSON upload, see
+     * {@link UserImportReader} for the format, only for administrators<br>
+     * the result of every row is streamed back as newline delimited JSON
+     * while the upload is still being read
+     *
+     * @param token the token of an administrator
+     * @param contentType text/csv or application/x-ndjson
+     * @param request the upload
+     * @param response the results, one JSON object per line
+     * @throws IOException if the upload can't be read or the results written
+     */
+    @PostMapping(value = "/users/import", consumes = {"text/csv", "application/x-ndjson"})
+    public void importUsers(@RequestHeader("token") String token,
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!userManager.isLoggedIn(token)) {
+            response.setStatus(HttpStatus.UNAUTHORIZED.value());
+            return;
+        }
+        if (!userManager.isAdmin(token)) {
+            response.setStatus(HttpStatus.FORBIDDEN.value());
+            return;
+        }
+        boolean json = MediaType.parseMediaType(contentType).isCompatibleWith(NDJSON);
+        BufferedReader in = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+        response.setContentType(NDJSON.toString());
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        Writer w = response.getWriter();
+        try {
+            userManager.importUsers(new UserImportReader(in, json), r -> {
+                try {
+                    w.write(r.toJSON().toString());
+                    w.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        w.flush();
+    }
+
+    /**
+     * marks the matching users as deleted and logs them out, only for
+     * administrators, see {@link #purgeUsers} for the parameters
+     */
+    @PostMapping("/users/deactivate")
+    public ResponseEntity<StreamingResponseBody> deactivateUsers(@RequestHeader("token") String token,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String email,
+            @RequestParam(defaultValue = "false") boolean unconfirmed,
+            @RequestParam(defaultValue = "false") boolean deactivated) {
+        return bulkDelete(token, new BulkUserDeleter.Filter(after, to, email, unconfirmed, deactivated), false);
+    }
+
+    /**
+     * deletes the matching users and everything that belongs to them, only
+     * for administrators<br>
+     * progress is streamed back as newline delimited JSON after every chunk,
+     * if the request is interrupted send it again with {@code after} set to
+     * the last reported {@code lastId}
+     *
+     * @param token the token of an administrator
+     * @param after only users with a greater id
+     * @param to only users with this id or less, 0 for no limit
+     * @param email a SQL LIKE pattern the email must match, such as
+     * {@code %@class2020.example.edu}
+     * @param unconfirmed only users that never confirmed their email
+     * @param deactivated only users already deactivated
+     * @return the progress, one JSON object per line, or 400 unless the
+     * email, unconfirmed or deactivated condition was given. The id bounds
+     * only narrow those down
+     */
+    @PostMapping("/users/purge")
+    public ResponseEntity<StreamingResponseBody> purgeUsers(@RequestHeader("token") String token,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String email,
+            @RequestParam(defaultValue = "false") boolean unconfirmed,
+            @RequestParam(defaultValue = "false") boolean deactivated) {
+        return bulkDelete(token, new BulkUserDeleter.Filter(after, to, email, unconfirmed, deactivated), true);
+    }
+
+    private ResponseEntity<StreamingResponseBody> bulkDelete(String token, BulkUserDeleter.Filter filter, boolean purge) {
+        if (!userManager.isLoggedIn(token)) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        if (!userManager.isAdmin(token)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        // never every user by accident
+        if (!filter.isRestricted()) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = out -> {
+            Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            Consumer<BulkUserDeleter.Progress> progress = p -> {
+                try {
+                    w.write(p.toJSON().toString());
+                    w.write('\n');
+                    w.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            try {
+                if (purge) {
+                    userManager.purgeUsers(filter, progress);
+                } else {
+                    userManager.deactivateUsers(filter, progress);
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+        return ResponseEntity.ok().contentType(NDJSON).body(body);
+    }
 }
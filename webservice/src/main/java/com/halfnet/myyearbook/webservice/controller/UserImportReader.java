@@ -0,0 +1,137 @@
+package com.halfnet.myyearbook.webservice.controller;
+
+import com.halfnet.myyearbook.webservice.manager.UserImporter;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * reads users to import one line at a time, either as CSV
+ * ({@code firstname,lastname,email,password}, with an optional header line)
+ * or as newline delimited JSON objects with the same keys<br>
+ * CSV fields containing commas or quotes are quoted, with quotes inside
+ * doubled ({@code "O""Brien, Jr."}). A quoted field can't span lines<br>
+ * lines that can't be parsed become rows with missing fields, so they are
+ * reported as invalid instead of stopping the import
+ */
+class UserImportReader implements Iterator<UserImporter.Row> {
+
+    private final BufferedReader reader;
+    private final boolean json;
+    private long line;
+    private String next;
+
+    UserImportReader(BufferedReader reader, boolean json) {
+        this.reader = reader;
+        this.json = json;
+        advance();
+        if (!json && next != null && next.trim().toLowerCase().startsWith("firstname,")) {
+            advance();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public UserImporter.Row next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        String l = next;
+        long n = line;
+        advance();
+        return json ? parseJSON(n, l) : parseCSV(n, l);
+    }
+
+    private void advance() {
+        try {
+            do {
+                next = reader.readLine();
+                line++;
+            } while (next != null && next.isBlank());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static UserImporter.Row parseCSV(long n, String l) {
+        List<String> f = splitCSV(l);
+        if (f == null || f.size() != 4) {
+            return new UserImporter.Row(n, null, null, null, null);
+        }
+        return new UserImporter.Row(n, f.get(0).trim(), f.get(1).trim(), f.get(2).trim(), f.get(3));
+    }
+
+    /**
+     * splits a CSV line into its fields, unquoting quoted fields
+     *
+     * @return the fields, or null if a quote is not closed or is followed by
+     * something other than a comma
+     */
+    private static List<String> splitCSV(String l) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            // quotes only count at the start of a field, ignoring spaces before them
+            int start = i;
+            while (i < l.length() && l.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < l.length() && l.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= l.length()) {
+                        return null;
+                    }
+                    char c = l.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < l.length() && l.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < l.length() && l.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < l.length() && l.charAt(i) != ',') {
+                    return null;
+                }
+            } else {
+                i = start;
+                while (i < l.length() && l.charAt(i) != ',') {
+                    field.append(l.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            field.setLength(0);
+            if (i >= l.length()) {
+                return fields;
+            }
+            // skip the comma
+            i++;
+        }
+    }
+
+    private static UserImporter.Row parseJSON(long n, String l) {
+        try {
+            JSONObject o = new JSONObject(l);
+            return new UserImporter.Row(n, o.optString("firstname", null), o.optString("lastname", null),
+                    o.optString("email", null), o.optString("password", null));
+        } catch (JSONException e) {
+            return new UserImporter.Row(n, null, null, null, null);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.halfnet.myyearbook.webservice.datasource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * remembers what was just written, so reads of it go to the primary until
+ * the replicas have had time to catch up
+ */
+@Component
+public class ReadYourWrites {
+
+    private final Cache<String, Boolean> recent;
+
+    public ReadYourWrites(@Value("${webservice.replica.sticky-window:5000}") long windowMillis,
+            @Value("${webservice.replica.sticky-max-size:100000}") long maxSize) {
+        this.recent = Caffeine.newBuilder()
+                .expireAfterWrite(windowMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxSize)
+                .build();
+    }
+
+    /**
+     * @param key what was written, such as a token
+     */
+    public void written(String key) {
+        recent.put(key, Boolean.TRUE);
+    }
+
+    /**
+     * reads something from the primary if it was written within the window,
+     * or from wherever the transaction would normally go otherwise
+     *
+     * @param <T> the return type
+     * @param key what is being read
+     * @param s the read
+     * @return what s returned
+     */
+    public <T> T read(String key, Supplier<T> s) {
+        if (recent.getIfPresent(key) != null) {
+            return ReplicaRoutingDataSource.onPrimary(s);
+        }
+        return s.get();
+    }
+}
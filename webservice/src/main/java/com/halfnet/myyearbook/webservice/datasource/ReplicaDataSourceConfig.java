@@ -0,0 +1,56 @@
+package com.halfnet.myyearbook.webservice.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * when {@code webservice.replica.urls} is set, read only transactions go to
+ * those databases and everything else to {@code spring.datasource.url}<br>
+ * replicas use the same driver, username and password as the primary, and
+ * every pool gets the {@code spring.datasource.hikari} settings, like the
+ * single pool Spring Boot would otherwise create
+ */
+@Configuration
+@ConditionalOnProperty("webservice.replica.urls")
+public class ReplicaDataSourceConfig {
+
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties, Environment environment,
+            @Value("${webservice.replica.urls}") String[] replicaUrls) {
+        Binder binder = Binder.get(environment);
+        DataSource primary = pool(properties, binder, properties.determineUrl(), "primary");
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            if (!url.isBlank()) {
+                replicas.add(pool(properties, binder, url.trim(), "replica-" + replicas.size()));
+            }
+        }
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas);
+        routing.afterPropertiesSet();
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, Binder binder, String url, String name) {
+        HikariDataSource ds = properties.initializeDataSourceBuilder().type(HikariDataSource.class).url(url).build();
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(ds));
+        // a spring.datasource.hikari.jdbc-url would send every pool to the same database
+        ds.setJdbcUrl(url);
+        // pool names must be unique for JMX and metrics
+        String prefix = ds.getPoolName() == null ? "HikariPool" : ds.getPoolName();
+        ds.setPoolName(prefix + "-" + name);
+        return ds;
+    }
+}
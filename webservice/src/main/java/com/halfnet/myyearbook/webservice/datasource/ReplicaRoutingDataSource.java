@@ -0,0 +1,66 @@
+package com.halfnet.myyearbook.webservice.datasource;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * sends connections for read only transactions to the replicas, round
+ * robin, and everything else to the primary<br>
+ * must be wrapped in a {@code LazyConnectionDataSourceProxy}, otherwise the
+ * connection is taken before the transaction is marked read only
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final String PRIMARY = "primary";
+    private static final ThreadLocal<Boolean> forcePrimary = new ThreadLocal<>();
+
+    private final String[] replicas;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicas = new String[replicas.size()];
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas[i] = "replica-" + i;
+            targets.put(this.replicas[i], replicas.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * runs something with every connection it takes going to the primary,
+     * even in read only transactions
+     *
+     * @param <T> the return type
+     * @param s what to run
+     * @return what s returned
+     */
+    public static <T> T onPrimary(Supplier<T> s) {
+        if (forcePrimary.get() != null) {
+            return s.get();
+        }
+        forcePrimary.set(Boolean.TRUE);
+        try {
+            return s.get();
+        } finally {
+            forcePrimary.remove();
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (replicas.length == 0 || forcePrimary.get() != null
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            return PRIMARY;
+        }
+        return replicas[Math.floorMod(next.getAndIncrement(), replicas.length)];
+    }
+}
@@ -1,22 +1,26 @@
 package com.halfnet.myyearbook.webservice.entity;
 
 import java.io.Serializable;
+import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.OneToOne;
 import javax.persistence.Table;
 
 @Entity
-@Table(name = "myyb_password_reset")
+@Table(name = "myyb_password_reset", indexes = @Index(columnList = "date_added"))
 public class PasswordReset implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    public static final long TIMEOUT = 86400000; //1 day
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     @Column
@@ -25,6 +29,10 @@ public class PasswordReset implements Serializable {
     @Column(nullable = false)
     private String newPassword;
     
+    // null for resets created before this column existed
+    @Column(name = "date_added")
+    private Date dateAdded;
+
     @OneToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
@@ -49,6 +57,21 @@ public class PasswordReset implements Serializable {
         this.newPassword = newPassword;
     }
 
+    public Date getDateAdded() {
+        return dateAdded;
+    }
+
+    public void setDateAdded(Date dateAdded) {
+        this.dateAdded = dateAdded;
+    }
+
+    /**
+     * @return true if the reset is older than {@link #TIMEOUT}
+     */
+    public boolean isExpired() {
+        return dateAdded != null && System.currentTimeMillis() - dateAdded.getTime() > TIMEOUT;
+    }
+
     public User getUser() {
         return user;
     }
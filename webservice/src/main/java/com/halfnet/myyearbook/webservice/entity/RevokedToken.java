@@ -0,0 +1,119 @@
+package com.halfnet.myyearbook.webservice.entity;
+
+import java.io.Serializable;
+import java.util.Date;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+/**
+ * an entry of the append only revocation log that every instance polls in
+ * id order, see {@code RevocationFeed}: a token that was logged out, every
+ * token of a user issued before a time, or a user whose cached copies are
+ * stale<br>
+ * revoked signed tokens must no longer be accepted even though their
+ * signature is valid, so entries are kept until the tokens they cover
+ * would have expired anyway
+ */
+@Entity
+@Table(name = "myyb_revoked_token", indexes = @Index(columnList = "expires_at"))
+public class RevokedToken implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column
+    private long id;
+
+    // null on entries written before kinds existed, which are TOKEN or USER_TOKENS
+    @Enumerated(EnumType.STRING)
+    @Column(name = "kind", length = 16)
+    private Kind kind;
+
+    // SHA-256 of the token, null unless this revokes a single token
+    @Column(name = "token_hash", columnDefinition = "BINARY(32)")
+    private byte[] tokenHash;
+
+    // not a foreign key, deleted users stay revoked
+    @Column(name = "user_id", nullable = false)
+    private long userId;
+
+    @Column(name = "date_revoked", nullable = false)
+    private Date dateRevoked;
+
+    @Column(name = "expires_at", nullable = false)
+    private Date expiresAt;
+
+    public RevokedToken() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * @return what this entry revokes
+     */
+    public Kind getKind() {
+        if (kind == null) {
+            return tokenHash == null ? Kind.USER_TOKENS : Kind.TOKEN;
+        }
+        return kind;
+    }
+
+    public void setKind(Kind kind) {
+        this.kind = kind;
+    }
+
+    public byte[] getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(byte[] tokenHash) {
+        this.tokenHash = tokenHash;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(long userId) {
+        this.userId = userId;
+    }
+
+    public Date getDateRevoked() {
+        return dateRevoked;
+    }
+
+    public void setDateRevoked(Date dateRevoked) {
+        this.dateRevoked = dateRevoked;
+    }
+
+    public Date getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Date expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public enum Kind {
+        // a single token, by tokenHash
+        TOKEN,
+        // every token of the user issued up to dateRevoked, and the user itself
+        USER_TOKENS,
+        // cached copies of the user, its tokens stay valid
+        USER
+    }
+}
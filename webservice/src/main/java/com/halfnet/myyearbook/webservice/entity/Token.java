@@ -1,6 +1,8 @@
 package com.halfnet.myyearbook.webservice.entity;
 
+import com.halfnet.myyearbook.webservice.util.Utils;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Date;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -8,12 +10,15 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 
 @Entity
-@Table(name = "myyb_token")
+@Table(name = "myyb_token", indexes = {
+    @Index(columnList = "date_added"),
+    @Index(columnList = "last_seen")})
 public class Token implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -23,15 +28,20 @@ public class Token implements Serializable {
     @Column
     private long id;
 
-    @Column(nullable = false, unique = true, length = 256)
-    private String token;
+    // SHA-256 of the token, the token itself is never stored
+    @Column(name = "token_hash", nullable = false, unique = true, columnDefinition = "BINARY(32)")
+    private byte[] tokenHash;
 
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
     
-    @Column(nullable = false)
+    @Column(name = "date_added", nullable = false)
     private Date dateAdded;
+
+    // written behind by SessionActivity, the token expires User.TIMEOUT after this
+    @Column(name = "last_seen")
+    private Date lastSeen;
     
     public Token() {
     }
@@ -44,12 +54,29 @@ public class Token implements Serializable {
         this.id = id;
     }
 
-    public String getToken() {
-        return token;
+    public byte[] getTokenHash() {
+        return tokenHash;
+    }
+
+    public void setTokenHash(byte[] tokenHash) {
+        this.tokenHash = tokenHash;
     }
 
+    /**
+     * sets the token, only its digest is kept
+     *
+     * @param token the token
+     */
     public void setToken(String token) {
-        this.token = token;
+        this.tokenHash = Utils.digestToken(token);
+    }
+
+    /**
+     * @param token the token to check
+     * @return true if this is the given token
+     */
+    public boolean matches(String token) {
+        return Arrays.equals(this.tokenHash, Utils.digestToken(token));
     }
 
     public User getUser() {
@@ -68,4 +95,12 @@ public class Token implements Serializable {
         this.dateAdded = dateAdded;
     }
 
+    public Date getLastSeen() {
+        return lastSeen;
+    }
+
+    public void setLastSeen(Date lastSeen) {
+        this.lastSeen = lastSeen;
+    }
+
 }
@@ -5,22 +5,28 @@ import java.io.Serializable;
 import java.util.Date;
 import java.util.Set;
 import javax.persistence.CascadeType;
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
-import javax.persistence.OneToOne;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "user")
 @Table(name = "myyb_user")
 public class User implements Serializable {
 
     private static final long serialVersionUID = 1L;
     
-    private static final long TIMEOUT = 432000000; //5 days
+    public static final long TIMEOUT = 432000000; //5 days since a token was last used
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -36,6 +42,10 @@ public class User implements Serializable {
     @Column
     private String emailAddress;
 
+    // lower cased emailAddress, every email lookup goes through this
+    @Column(name = "email_normalized", unique = true)
+    private String emailNormalized;
+
     @Column
     private boolean emailConfirmed;
 
@@ -47,55 +57,42 @@ public class User implements Serializable {
     
     @OneToMany(cascade = CascadeType.ALL, orphanRemoval = true, mappedBy = "user")
     private Set<Token> tokens;
+
+    // settings and password resets are not mapped here, an inverse one to one
+    // can't be lazy and would cost a select each on every cache hit, they are
+    // looked up through their repositories by user id instead
     
-    @OneToOne(mappedBy = "user", orphanRemoval = true, cascade = CascadeType.ALL)
-    private UserSettings settings;
-    
-    @OneToOne(mappedBy = "user", orphanRemoval = true, cascade = CascadeType.ALL)
-    private PasswordReset passwordReset;
     
     public User(String firstname, String lastname, String email) {
         this.firstname = firstname;
         this.lastname = lastname;
         this.emailConfirmed = false;
         this.emailAddress = email;
+        this.emailNormalized = Utils.normalizeEmail(email);
         this.deleted = false;
     }
     
-    public void removeOldTokens(){
-        this.tokens.removeIf(n->(System.currentTimeMillis() - n.getDateAdded().getTime()) > TIMEOUT);
-    }
-    
     public boolean isValidToken(String token){
-        return this.tokens.stream().anyMatch(n->n.getToken().equals(token));
+        return this.tokens.stream().anyMatch(n->n.matches(token));
     }
     
     public void addToken(String token){
-        removeOldTokens();
         Token t = new Token();
         t.setDateAdded(new Date());
+        t.setLastSeen(t.getDateAdded());
         t.setToken(token);
         t.setUser(this);
         this.tokens.add(t);
     }
     
     public boolean removeToken(String token){
-        return this.tokens.removeIf(n->n.getToken().equals(token));
+        return this.tokens.removeIf(n->n.matches(token));
     }
 
     public User() {
 
     }
 
-    public UserSettings getSettings() {
-        return settings;
-    }
-
-    public void setSettings(UserSettings settings) {
-        settings.setUser(this);
-        this.settings = settings;
-    }
-
     public String getFirstname() {
         return firstname;
     }
@@ -121,6 +118,13 @@ public class User implements Serializable {
         return (int)this.id;
     }
 
+    /**
+     * checks the password on the calling thread, request handlers should use
+     * {@code UserManager.checkPassword} instead
+     *
+     * @param password the plaintext password
+     * @return true if the password matches
+     */
     public boolean checkPassword(String password) {
         return Utils.checkPassword(password, this.passwordHash);
     }
@@ -171,14 +175,17 @@ public class User implements Serializable {
 
     public void setEmailAddress(String emailAddress) {
         this.emailAddress = emailAddress;
+        this.emailNormalized = Utils.normalizeEmail(emailAddress);
     }
 
-    public PasswordReset getPasswordReset() {
-        return passwordReset;
+    public String getEmailNormalized() {
+        return emailNormalized;
     }
 
-    public void setPasswordReset(PasswordReset passwordReset) {
-        this.passwordReset = passwordReset;
+    @PrePersist
+    @PreUpdate
+    private void normalizeEmail() {
+        this.emailNormalized = Utils.normalizeEmail(emailAddress);
     }
 
 }
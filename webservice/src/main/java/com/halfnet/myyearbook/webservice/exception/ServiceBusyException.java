@@ -0,0 +1,21 @@
+package com.halfnet.myyearbook.webservice.exception;
+
+/**
+ * thrown when a request is rejected because the server is overloaded, the
+ * client should try again after {@link #getRetryAfterSeconds()}
+ */
+public class ServiceBusyException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public ServiceBusyException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
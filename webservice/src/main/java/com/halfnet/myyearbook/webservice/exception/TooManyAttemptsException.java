@@ -0,0 +1,22 @@
+package com.halfnet.myyearbook.webservice.exception;
+
+/**
+ * thrown when a login is rejected because there were too many recent
+ * attempts for the account or from the client, the client should try again
+ * after {@link #getRetryAfterSeconds()}
+ */
+public class TooManyAttemptsException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;
+
+    public TooManyAttemptsException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
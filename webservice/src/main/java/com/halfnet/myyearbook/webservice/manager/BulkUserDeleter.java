@@ -0,0 +1,298 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.audit.AuditEvent;
+import com.halfnet.myyearbook.webservice.audit.AuditLog;
+import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.entity.UserSettings;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * deactivates or purges the users matching a {@link Filter} in chunks of
+ * {@code webservice.user-bulk.batch-size}, each its own transaction of a
+ * few set based statements instead of loading every user and its
+ * associations<br>
+ * a chunk locks the next users in id order, revokes their tokens through
+ * the {@link RevocationFeed}, then deletes their rows child table first.
+ * Progress is reported after every chunk with the last id done, so an
+ * interrupted run is resumed by running the same filter after that id.
+ * Running it again from the start is also safe, users already done no
+ * longer match
+ */
+@Component
+public class BulkUserDeleter {
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RevocationFeed revocationFeed;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${webservice.user-bulk.batch-size:500}")
+    private int batchSize;
+
+    @Value("${webservice.user-bulk.pause:50}")
+    private long pause;
+
+    public BulkUserDeleter() {
+
+    }
+
+    /**
+     * marks users as deleted and logs them out, keeping their rows
+     *
+     * @param filter the users to deactivate, users already deleted are
+     * skipped
+     * @param progress called after every chunk and once more when done
+     */
+    public void deactivate(Filter filter, Consumer<Progress> progress) {
+        run(Mode.DEACTIVATE, filter, progress);
+    }
+
+    /**
+     * deletes users and everything that belongs to them
+     *
+     * @param filter the users to purge
+     * @param progress called after every chunk and once more when done
+     */
+    public void purge(Filter filter, Consumer<Progress> progress) {
+        run(Mode.PURGE, filter, progress);
+    }
+
+    private void run(Mode mode, Filter filter, Consumer<Progress> progress) {
+        MapSqlParameterSource params = new MapSqlParameterSource("limit", batchSize);
+        String select = "SELECT u.id FROM myyb_user u WHERE u.id > :after"
+                + filter.where(params, mode == Mode.DEACTIVATE)
+                + " ORDER BY u.id LIMIT :limit FOR UPDATE";
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        long start = System.nanoTime();
+        long after = filter.afterId;
+        long processed = 0;
+        try {
+            while (true) {
+                params.addValue("after", after);
+                List<Long> ids = tx.execute(status -> {
+                    List<Long> chunk = jdbcTemplate.queryForList(select, params, Long.class);
+                    if (!chunk.isEmpty()) {
+                        mode.apply(this, chunk);
+                    }
+                    return chunk;
+                });
+                if (ids.isEmpty()) {
+                    break;
+                }
+                after = ids.get(ids.size() - 1);
+                processed += ids.size();
+                for (Long id : ids) {
+                    auditLog.record(mode.event, id, null, null);
+                }
+                registry.counter(MetricsConstants.USER_BULK, "op", mode.name().toLowerCase()).increment(ids.size());
+                // evict this instance's caches now rather than at the next poll
+                revocationFeed.poll();
+                progress.accept(new Progress(processed, after, false));
+                if (ids.size() < batchSize) {
+                    break;
+                }
+                sleep();
+            }
+        } finally {
+            // the chunks bypassed Hibernate, so cached users, their settings and user by email results are stale,
+            // also when the run was cut short
+            Cache cache = entityManagerFactory.getCache();
+            cache.evict(User.class);
+            cache.evict(UserSettings.class);
+            cache.unwrap(org.hibernate.Cache.class).evictQueryRegions();
+        }
+        log.info("Bulk " + mode.name().toLowerCase() + " of " + processed + " users up to id " + after + " took "
+                + (System.nanoTime() - start) / 1000000 + "ms");
+        progress.accept(new Progress(processed, after, true));
+    }
+
+    private void deactivateChunk(List<Long> ids) {
+        Map<String, List<Long>> p = Map.of("ids", ids);
+        revocationFeed.publishUserTokens(ids);
+        jdbcTemplate.update("DELETE FROM myyb_token WHERE user_id IN (:ids)", p);
+        jdbcTemplate.update("DELETE FROM myyb_password_reset WHERE user_id IN (:ids)", p);
+        jdbcTemplate.update("UPDATE myyb_user SET deleted = true WHERE id IN (:ids)", p);
+    }
+
+    private void purgeChunk(List<Long> ids) {
+        Map<String, List<Long>> p = Map.of("ids", ids);
+        // reads the users, so before they are deleted
+        revocationFeed.publishUserTokens(ids);
+        jdbcTemplate.update("DELETE FROM myyb_token WHERE user_id IN (:ids)", p);
+        jdbcTemplate.update("DELETE FROM myyb_password_reset WHERE user_id IN (:ids)", p);
+        jdbcTemplate.update("DELETE FROM myyb_user_settings WHERE user_id IN (:ids)", p);
+        jdbcTemplate.update("DELETE FROM myyb_user WHERE id IN (:ids)", p);
+    }
+
+    private void sleep() {
+        if (pause <= 0) {
+            return;
+        }
+        // lets replicas and other transactions catch up between chunks
+        try {
+            Thread.sleep(pause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted, resume after the last reported id", e);
+        }
+    }
+
+    private enum Mode {
+        DEACTIVATE(AuditEvent.USER_DEACTIVATED) {
+            @Override
+            void apply(BulkUserDeleter d, List<Long> ids) {
+                d.deactivateChunk(ids);
+            }
+        },
+        PURGE(AuditEvent.USER_PURGED) {
+            @Override
+            void apply(BulkUserDeleter d, List<Long> ids) {
+                d.purgeChunk(ids);
+            }
+        };
+
+        private final AuditEvent event;
+
+        private Mode(AuditEvent event) {
+            this.event = event;
+        }
+
+        abstract void apply(BulkUserDeleter d, List<Long> ids);
+    }
+
+    /**
+     * which users a bulk operation applies to, every condition given must
+     * match
+     */
+    public static class Filter {
+
+        private final long afterId;
+        private final long toId;
+        private final String emailLike;
+        private final boolean unconfirmedOnly;
+        private final boolean deactivatedOnly;
+
+        /**
+         * @param afterId only users with a greater id, 0 for all
+         * @param toId only users with this id or less, 0 for no limit
+         * @param emailLike a SQL LIKE pattern the email must match, such as
+         * {@code %@class2020.example.edu}, or null
+         * @param unconfirmedOnly only users that never confirmed their email
+         * @param deactivatedOnly only users already marked as deleted
+         */
+        public Filter(long afterId, long toId, String emailLike, boolean unconfirmedOnly, boolean deactivatedOnly) {
+            this.afterId = afterId;
+            this.toId = toId;
+            this.emailLike = emailLike;
+            this.unconfirmedOnly = unconfirmedOnly;
+            this.deactivatedOnly = deactivatedOnly;
+        }
+
+        /**
+         * id bounds alone don't count, nor do email patterns of only
+         * wildcards, as they can still match every user
+         *
+         * @return true if the filter selects users by more than their id
+         */
+        public boolean isRestricted() {
+            return unconfirmedOnly || deactivatedOnly
+                    || emailLike != null && !emailLike.replace("%", "").replace("_", "").isBlank();
+        }
+
+        private String where(MapSqlParameterSource params, boolean activeOnly) {
+            StringBuilder sb = new StringBuilder();
+            if (toId > 0) {
+                sb.append(" AND u.id <= :to");
+                params.addValue("to", toId);
+            }
+            if (emailLike != null) {
+                sb.append(" AND u.email_normalized LIKE :email");
+                params.addValue("email", Utils.normalizeEmail(emailLike));
+            }
+            if (unconfirmedOnly) {
+                sb.append(" AND (u.email_confirmed = false OR u.email_confirmed IS NULL)");
+            }
+            if (deactivatedOnly) {
+                sb.append(" AND u.deleted = true");
+            }
+            if (activeOnly) {
+                sb.append(" AND (u.deleted = false OR u.deleted IS NULL)");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * how far a bulk operation got
+     */
+    public static class Progress {
+
+        private final long processed;
+        private final long lastId;
+        private final boolean done;
+
+        public Progress(long processed, long lastId, boolean done) {
+            this.processed = processed;
+            this.lastId = lastId;
+            this.done = done;
+        }
+
+        /**
+         * @return the number of users done so far
+         */
+        public long getProcessed() {
+            return processed;
+        }
+
+        /**
+         * @return the id of the last user done, to resume after
+         */
+        public long getLastId() {
+            return lastId;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public JSONObject toJSON() {
+            return new JSONObject()
+                    .put("processed", processed)
+                    .put("lastId", lastId)
+                    .put("done", done);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * hit, miss and put counts of the Hibernate second level and query caches
+ */
+@Component
+public class CacheStatistics {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public CacheStatistics() {
+
+    }
+
+    public Statistics getStatistics() {
+        return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    /**
+     * @return the statistics of every cache region, by region name
+     */
+    public Map<String, CacheRegionStatistics> getRegionStatistics() {
+        Statistics stats = getStatistics();
+        Map<String, CacheRegionStatistics> ret = new LinkedHashMap<>();
+        for (String region : stats.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics s = stats.getCacheRegionStatistics(region);
+            if (s != null) {
+                ret.put(region, s);
+            }
+        }
+        return ret;
+    }
+
+    public long getQueryCacheHitCount() {
+        return getStatistics().getQueryCacheHitCount();
+    }
+
+    public long getQueryCacheMissCount() {
+        return getStatistics().getQueryCacheMissCount();
+    }
+}
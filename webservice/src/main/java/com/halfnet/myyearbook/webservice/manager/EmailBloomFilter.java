@@ -0,0 +1,154 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.repo.UserRepo;
+import com.halfnet.myyearbook.webservice.util.BloomFilter;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * an in memory Bloom filter of every registered email, so most signup
+ * checks for a free email don't need the database<br>
+ * until the filter is built every email might exist. It is rebuilt
+ * periodically to pick up users added by other instances
+ */
+@Component
+public class EmailBloomFilter {
+
+    private static final int BACKFILL_CHUNK = 1000;
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${webservice.email-filter.expected-users:100000}")
+    private long expectedUsers;
+
+    @Value("${webservice.email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    // the filter being rebuilt, users added meanwhile go into both
+    private volatile BloomFilter building;
+
+    public EmailBloomFilter() {
+
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void init() {
+        backfill();
+        rebuild();
+    }
+
+    /**
+     * fills in the normalized email of users created before it existed, in
+     * chunks by id<br>
+     * a chunk that fails is retried one user at a time, so a user whose email
+     * differs only by case from another one doesn't hold back the rest
+     */
+    private void backfill() {
+        long updated = 0;
+        List<Long> conflicts = new ArrayList<>();
+        long lastId = 0;
+        List<Long> ids;
+        do {
+            ids = userRepo.findIdsToNormalizeAfter(lastId, PageRequest.of(0, BACKFILL_CHUNK));
+            if (ids.isEmpty()) {
+                break;
+            }
+            lastId = ids.get(ids.size() - 1);
+            try {
+                updated += userRepo.normalizeEmails(ids);
+            } catch (DataAccessException e) {
+                for (Long id : ids) {
+                    try {
+                        updated += userRepo.normalizeEmails(Collections.singleton(id));
+                    } catch (DataAccessException e1) {
+                        conflicts.add(id);
+                    }
+                }
+            }
+        } while (ids.size() == BACKFILL_CHUNK);
+        if (updated > 0) {
+            log.info("Normalized the email of " + updated + " users");
+        }
+        if (!conflicts.isEmpty()) {
+            // the emails differ only by case from another user's, these users
+            // can't log in until one of them is changed
+            log.error("Could not normalize the email of users " + conflicts);
+        }
+    }
+
+    /**
+     * builds a new filter from the database and swaps it in
+     */
+    @Scheduled(fixedDelayString = "${webservice.email-filter.rebuild-interval:3600000}",
+            initialDelayString = "${webservice.email-filter.rebuild-interval:3600000}")
+    public void rebuild() {
+        long start = System.nanoTime();
+        BloomFilter f = new BloomFilter(Math.max(expectedUsers, userRepo.count() * 2), falsePositiveRate);
+        this.building = f;
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(true);
+        long count = tx.execute(status -> {
+            try (Stream<String> emails = userRepo.streamNormalizedEmails()) {
+                return emails.mapToLong(e -> {
+                    f.put(e);
+                    return 1;
+                }).sum();
+            }
+        });
+        this.filter = f;
+        this.building = null;
+        log.info("Built email filter of " + count + " users in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * @param email the email to check
+     * @return false if no user has the email, true if one might
+     */
+    public boolean mightExist(String email) {
+        BloomFilter f = this.filter;
+        return f == null || f.mightContain(Utils.normalizeEmail(email));
+    }
+
+    /**
+     * records a new user's email
+     *
+     * @param email the email
+     */
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        String normalized = Utils.normalizeEmail(email);
+        BloomFilter f = this.filter;
+        if (f != null) {
+            f.put(normalized);
+        }
+        BloomFilter b = this.building;
+        if (b != null) {
+            b.put(normalized);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.halfnet.myyearbook.webservice.exception.TooManyAttemptsException;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.util.SlidingWindowCounter;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * limits login attempts per account and per client address over a sliding
+ * window, checked before any BCrypt work so that a burst of bad attempts
+ * costs almost nothing<br>
+ * every attempt counts, a successful login clears the account's count.
+ * Counters of keys that have been idle for a whole window are evicted, and
+ * at most {@code max-keys} of each kind are kept
+ */
+@Component
+public class LoginThrottle {
+
+    private final long windowMillis;
+    private final int perEmail;
+    private final int perAddress;
+
+    private final Cache<String, SlidingWindowCounter> emails;
+    private final Cache<String, SlidingWindowCounter> addresses;
+
+    private final Counter emailRejected;
+    private final Counter addressRejected;
+
+    public LoginThrottle(@Value("${webservice.login-throttle.window:60000}") long windowMillis,
+            @Value("${webservice.login-throttle.per-email:10}") int perEmail,
+            @Value("${webservice.login-throttle.per-address:100}") int perAddress,
+            @Value("${webservice.login-throttle.max-keys:100000}") long maxKeys,
+            MeterRegistry registry) {
+        this.windowMillis = windowMillis;
+        this.perEmail = perEmail;
+        this.perAddress = perAddress;
+        // idle for two windows means the previous window is empty too
+        this.emails = Caffeine.newBuilder()
+                .expireAfterAccess(2 * windowMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxKeys)
+                .build();
+        this.addresses = Caffeine.newBuilder()
+                .expireAfterAccess(2 * windowMillis, TimeUnit.MILLISECONDS)
+                .maximumSize(maxKeys)
+                .build();
+        this.emailRejected = registry.counter(MetricsConstants.LOGIN_THROTTLE_REJECTED, "key", "email");
+        this.addressRejected = registry.counter(MetricsConstants.LOGIN_THROTTLE_REJECTED, "key", "address");
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_LIMIT, Tags.of("key", "email"), this, t -> t.perEmail);
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_LIMIT, Tags.of("key", "address"), this, t -> t.perAddress);
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_KEYS, Tags.of("key", "email"), emails, Cache::estimatedSize);
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_KEYS, Tags.of("key", "address"), addresses, Cache::estimatedSize);
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_SATURATED, Tags.of("key", "email"), emails, c -> saturated(c, perEmail));
+        registry.gauge(MetricsConstants.LOGIN_THROTTLE_SATURATED, Tags.of("key", "address"), addresses, c -> saturated(c, perAddress));
+    }
+
+    /**
+     * records a login attempt
+     *
+     * @param email the email being logged in to
+     * @param address the client's address, or null if unknown
+     * @throws TooManyAttemptsException if there were too many attempts for
+     * the email or from the address
+     */
+    public void attempt(String email, String address) {
+        long now = System.currentTimeMillis();
+        if (email != null && count(emails, Utils.normalizeEmail(email), now) > perEmail) {
+            emailRejected.increment();
+            throw new TooManyAttemptsException("Too many login attempts for this account, try again later", retryAfter(now));
+        }
+        if (address != null && count(addresses, address, now) > perAddress) {
+            addressRejected.increment();
+            throw new TooManyAttemptsException("Too many login attempts, try again later", retryAfter(now));
+        }
+    }
+
+    /**
+     * clears the attempts of an account after a successful login
+     *
+     * @param email the email that was logged in to
+     */
+    public void succeeded(String email) {
+        if (email != null) {
+            emails.invalidate(Utils.normalizeEmail(email));
+        }
+    }
+
+    private double count(Cache<String, SlidingWindowCounter> counters, String key, long now) {
+        return counters.get(key, k -> new SlidingWindowCounter()).increment(now, windowMillis);
+    }
+
+    private int retryAfter(long now) {
+        long left = windowMillis - now % windowMillis;
+        return (int) Math.max(1, (left + 999) / 1000);
+    }
+
+    private double saturated(Cache<String, SlidingWindowCounter> counters, int limit) {
+        long now = System.currentTimeMillis();
+        return counters.asMap().values().stream()
+                .filter(c -> c.get(now, windowMillis) >= limit)
+                .count();
+    }
+}
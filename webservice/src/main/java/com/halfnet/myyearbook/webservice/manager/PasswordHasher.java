@@ -0,0 +1,289 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.exception.ServiceBusyException;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * runs BCrypt hashing and verification on a dedicated pool sized to the
+ * number of CPUs, so that a burst of logins can't tie up every request
+ * thread<br>
+ * when the pool's queue is full, work is rejected with a
+ * {@link ServiceBusyException} instead of waiting<br>
+ * new hashes use {@code webservice.bcrypt.cost}, or when that is 0 the
+ * highest cost that hashes within {@code webservice.bcrypt.target-millis} on
+ * this host, measured at startup. Hashes of any other cost still verify, and
+ * can be replaced with {@link #rehash} when their password is known<br>
+ * bulk hashing for imports runs on a smaller pool of its own, so an import
+ * never takes the queue slots of logins
+ */
+@Component
+public class PasswordHasher {
+
+    // cheap enough to measure quickly at startup, every extra cost doubles the time
+    private static final int CALIBRATION_COST = 6;
+    private static final int MIN_COST = 4;
+    private static final int MAX_COST = 31;
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    private final ThreadPoolExecutor executor;
+    private final ThreadPoolExecutor importExecutor;
+    // imports wait for a permit instead of growing the import pool's queue
+    private final Semaphore importPermits;
+    private final int retryAfterSeconds;
+    private final int cost;
+
+    private final Timer hashTimer;
+    private final Timer verifyTimer;
+    private final Counter rejected;
+    private final Counter rehashed;
+    private final Counter rehashSkipped;
+
+    public PasswordHasher(@Value("${webservice.bcrypt.threads:0}") int threads,
+            @Value("${webservice.bcrypt.queue-size:64}") int queueSize,
+            @Value("${webservice.bcrypt.retry-after:1}") int retryAfterSeconds,
+            @Value("${webservice.bcrypt.cost:0}") int cost,
+            @Value("${webservice.bcrypt.target-millis:250}") long targetMillis,
+            @Value("${webservice.bcrypt.min-cost:10}") int minCost,
+            @Value("${webservice.bcrypt.max-cost:16}") int maxCost,
+            @Value("${webservice.bcrypt.import-threads:0}") int importThreads,
+            MeterRegistry registry) {
+        if (threads <= 0) {
+            threads = Runtime.getRuntime().availableProcessors();
+        }
+        if (importThreads <= 0) {
+            importThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        }
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread t = new Thread(r, "bcrypt-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        AtomicInteger importCount = new AtomicInteger();
+        this.importExecutor = new ThreadPoolExecutor(importThreads, importThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "bcrypt-import-" + importCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.importPermits = new Semaphore(importThreads * 2);
+        this.retryAfterSeconds = retryAfterSeconds;
+        if (cost > 0) {
+            this.cost = Math.min(MAX_COST, Math.max(MIN_COST, cost));
+        } else {
+            this.cost = calibrate(targetMillis, Math.max(MIN_COST, minCost), Math.min(MAX_COST, maxCost));
+            log.info("BCrypt cost calibrated to " + this.cost + " for a target of " + targetMillis + "ms");
+        }
+        this.hashTimer = registry.timer(MetricsConstants.BCRYPT, "op", "hash");
+        this.verifyTimer = registry.timer(MetricsConstants.BCRYPT, "op", "verify");
+        this.rejected = registry.counter(MetricsConstants.BCRYPT_REJECTED);
+        this.rehashed = registry.counter(MetricsConstants.BCRYPT_REHASH, "result", "done");
+        this.rehashSkipped = registry.counter(MetricsConstants.BCRYPT_REHASH, "result", "skipped");
+        registry.gauge(MetricsConstants.BCRYPT_COST, this, PasswordHasher::getCost);
+        registry.gauge(MetricsConstants.BCRYPT_QUEUE, executor, e -> e.getQueue().size());
+    }
+
+    /**
+     * checks if a plaintext password matches a hashed password
+     *
+     * @param pass the plaintext password
+     * @param hash the password hash
+     * @return true if the password matches the hash
+     * @throws ServiceBusyException if too many passwords are already waiting
+     * to be checked
+     */
+    public boolean checkPassword(String pass, String hash) {
+        return run(() -> verifyTimer.recordCallable(() -> Utils.checkPassword(pass, hash)));
+    }
+
+    /**
+     * creates a BCrypt password hash from a plaintext password and a new salt
+     *
+     * @param password the plaintext password
+     * @return a generated hash
+     * @throws ServiceBusyException if too many passwords are already waiting
+     * to be hashed
+     */
+    public String hashPassword(String password) {
+        return run(() -> hashTimer.recordCallable(() -> Utils.hashPassword(password, Utils.genSalt(cost))));
+    }
+
+    /**
+     * hashes many passwords in parallel on the import pool<br>
+     * unlike {@link #hashPassword} this never fails when the pool is busy,
+     * it waits until the import pool has room, and it never uses the pool
+     * that checks logins
+     *
+     * @param passwords the plaintext passwords
+     * @return the hashes, in the same order
+     */
+    public List<String> hashPasswords(List<String> passwords) {
+        List<Future<String>> futures = new ArrayList<>(passwords.size());
+        try {
+            for (String password : passwords) {
+                importPermits.acquire();
+                // done() runs once whether the hash completes, fails or is cancelled
+                FutureTask<String> task = new FutureTask<>(
+                        () -> hashTimer.recordCallable(() -> Utils.hashPassword(password, Utils.genSalt(cost)))) {
+                    @Override
+                    protected void done() {
+                        importPermits.release();
+                    }
+                };
+                futures.add(task);
+                importExecutor.execute(task);
+            }
+        } catch (InterruptedException e) {
+            for (Future<String> f : futures) {
+                f.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for BCrypt", e);
+        }
+        List<String> ret = new ArrayList<>(futures.size());
+        for (Future<String> f : futures) {
+            ret.add(await(f));
+        }
+        return ret;
+    }
+
+    /**
+     * @param hash a password hash
+     * @return true if the hash was made with a different cost than new
+     * hashes are
+     */
+    public boolean needsRehash(String hash) {
+        return Utils.getCost(hash) != cost;
+    }
+
+    /**
+     * hashes a password again with the current cost in the background<br>
+     * skipped when the pool's queue is full, the caller should try again
+     * next time the password is known
+     *
+     * @param password the plaintext password
+     * @return the new hash, or an empty future if skipped
+     */
+    public CompletableFuture<String> rehash(String password) {
+        CompletableFuture<String> ret = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    ret.complete(hashTimer.recordCallable(() -> Utils.hashPassword(password, Utils.genSalt(cost))));
+                    rehashed.increment();
+                } catch (Exception e) {
+                    ret.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rehashSkipped.increment();
+            ret.complete(null);
+        }
+        return ret;
+    }
+
+    /**
+     * @return the cost of new hashes
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> f;
+        try {
+            f = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new ServiceBusyException("Too many login attempts, try again later", retryAfterSeconds);
+        }
+        return await(f);
+    }
+
+    private <T> T await(Future<T> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            f.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for BCrypt", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * finds the highest cost whose hash takes at most a target time, by
+     * timing a cheap cost and doubling<br>
+     * the first hashes run before the JIT has compiled BCrypt, so the
+     * fastest of 300ms worth of hashes is taken. Set
+     * {@code webservice.bcrypt.cost} to skip this
+     */
+    private static int calibrate(long targetMillis, int minCost, int maxCost) {
+        String salt = Utils.genSalt(CALIBRATION_COST);
+        long best = Long.MAX_VALUE;
+        long end = System.nanoTime() + 300000000;
+        while (System.nanoTime() < end) {
+            long start = System.nanoTime();
+            Utils.hashPassword("calibration", salt);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        double millis = best / 1e6;
+        int c = CALIBRATION_COST;
+        while (c < maxCost && millis * 2 <= targetMillis) {
+            millis *= 2;
+            c++;
+        }
+        while (c > minCost && millis > targetMillis) {
+            millis /= 2;
+            c--;
+        }
+        return Math.min(maxCost, Math.max(minCost, c));
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        executor.shutdown();
+        importExecutor.shutdown();
+    }
+}
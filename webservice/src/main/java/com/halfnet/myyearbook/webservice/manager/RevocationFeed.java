@@ -0,0 +1,275 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.datasource.ReplicaRoutingDataSource;
+import com.halfnet.myyearbook.webservice.entity.RevokedToken;
+import com.halfnet.myyearbook.webservice.entity.RevokedToken.Kind;
+import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.repo.RevokedTokenRepo;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PostConstruct;
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * spreads logouts, deleted users and changed users to every instance
+ * through the append only {@code myyb_revoked_token} log<br>
+ * each instance polls the log for entries after the last id it has seen,
+ * every {@code webservice.revocation-feed.interval}, and evicts just the
+ * affected tokens and users from its token cache and second level cache.
+ * Ids are assigned when rows are inserted but become visible when their
+ * transaction commits, so a skipped id is rechecked for
+ * {@code webservice.revocation-feed.gap-timeout} in case it shows up late
+ */
+@Component
+public class RevocationFeed {
+
+    private static final int MAX_GAPS = 10000;
+    private static final String INSERT_USER_TOKENS = "INSERT INTO myyb_revoked_token "
+            + "(kind, user_id, date_revoked, expires_at) "
+            + "SELECT 'USER_TOKENS', id, :now, :expiresAt FROM myyb_user WHERE id IN (:ids)";
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    @Autowired
+    private RevokedTokenRepo revokedTokenRepo;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TokenDenyList denyList;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${webservice.signed-tokens.enabled:false}")
+    private boolean signedTokens;
+
+    @Value("${webservice.revocation-feed.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${webservice.revocation-feed.gap-timeout:60000}")
+    private long gapTimeout;
+
+    @Value("${webservice.revocation-feed.retention:3600000}")
+    private long retention;
+
+    private long lastId;
+    // ids skipped by the log -> when they were first noticed
+    private final Map<Long, Long> gaps = new HashMap<>();
+    // written by this instance and already applied, but not seen by poll yet -> when they were written
+    private final Map<Long, Long> published = new HashMap<>();
+
+    private final Map<Kind, Counter> applied = new EnumMap<>(Kind.class);
+    private Timer delay;
+
+    public RevocationFeed() {
+
+    }
+
+    /**
+     * starts following the log from its end, the caches are empty so
+     * nothing before needs applying, except revoked signed tokens that
+     * haven't expired
+     */
+    @PostConstruct
+    private synchronized void init() {
+        for (Kind k : Kind.values()) {
+            applied.put(k, registry.counter(MetricsConstants.REVOCATION_APPLIED, "kind", k.name().toLowerCase()));
+        }
+        delay = registry.timer(MetricsConstants.REVOCATION_DELAY);
+        ReplicaRoutingDataSource.onPrimary(() -> {
+            Long max = revokedTokenRepo.findMaxId();
+            lastId = max == null ? 0 : max;
+            if (signedTokens) {
+                revokedTokenRepo.findByExpiresAtAfter(new Date()).forEach(denyList::add);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * revokes a single token everywhere
+     *
+     * @param token the token
+     * @param p the owner of the token
+     */
+    public void publishToken(String token, TokenPrincipal p) {
+        long expiresAt = signedTokens && SignedTokens.isSigned(token)
+                ? p.getExpiresAt() : System.currentTimeMillis() + retention;
+        publish(Kind.TOKEN, p.getUserId(), Utils.digestToken(token), expiresAt);
+    }
+
+    /**
+     * revokes every token of a user issued up to now everywhere, and evicts
+     * the user
+     *
+     * @param userId the id of the user
+     */
+    public void publishUserTokens(long userId) {
+        long now = System.currentTimeMillis();
+        publish(Kind.USER_TOKENS, userId, null, now + (signedTokens ? User.TIMEOUT : retention));
+    }
+
+    /**
+     * revokes every token of many users everywhere, in the caller's
+     * transaction so that it commits together with the change to the users.
+     * This instance applies it at its next {@link #poll} like the others
+     *
+     * @param userIds the ids of the users, which must still exist
+     * @return the number of users revoked
+     */
+    public int publishUserTokens(Collection<Long> userIds) {
+        long now = System.currentTimeMillis();
+        MapSqlParameterSource params = new MapSqlParameterSource("ids", userIds)
+                .addValue("now", new Timestamp(now))
+                .addValue("expiresAt", new Timestamp(now + (signedTokens ? User.TIMEOUT : retention)));
+        // through JDBC, a native insert through Hibernate would evict the whole second level cache
+        return jdbcTemplate.update(INSERT_USER_TOKENS, params);
+    }
+
+    /**
+     * evicts a changed user everywhere
+     *
+     * @param userId the id of the user
+     */
+    public void publishUser(long userId) {
+        publish(Kind.USER, userId, null, System.currentTimeMillis() + retention);
+    }
+
+    private void publish(Kind kind, long userId, byte[] tokenHash, long expiresAt) {
+        RevokedToken r = new RevokedToken();
+        r.setKind(kind);
+        r.setUserId(userId);
+        r.setTokenHash(tokenHash);
+        r.setDateRevoked(new Date());
+        r.setExpiresAt(new Date(expiresAt));
+        r = revokedTokenRepo.save(r);
+        synchronized (this) {
+            // poll may have seen the row already, between its commit and now
+            if (r.getId() > lastId || gaps.containsKey(r.getId())) {
+                published.put(r.getId(), System.currentTimeMillis());
+            }
+        }
+        apply(List.of(r), false);
+    }
+
+    /**
+     * applies the entries written by any instance since the last poll
+     *
+     * @return the number of entries applied
+     */
+    @Scheduled(fixedDelayString = "${webservice.revocation-feed.interval:2000}",
+            initialDelayString = "${webservice.revocation-feed.interval:2000}")
+    public synchronized int poll() {
+        long now = System.currentTimeMillis();
+        List<RevokedToken> rows = new ArrayList<>();
+        // a replica could be behind, and then its rows would look like gaps
+        ReplicaRoutingDataSource.onPrimary(() -> {
+            if (!gaps.isEmpty()) {
+                for (RevokedToken r : revokedTokenRepo.findByIdIn(gaps.keySet())) {
+                    gaps.remove(r.getId());
+                    rows.add(r);
+                }
+            }
+            List<RevokedToken> next;
+            do {
+                next = revokedTokenRepo.findByIdGreaterThanOrderByIdAsc(lastId, PageRequest.of(0, batchSize));
+                for (RevokedToken r : next) {
+                    for (long id = lastId + 1; id < r.getId() && gaps.size() < MAX_GAPS; id++) {
+                        gaps.put(id, now);
+                    }
+                    lastId = r.getId();
+                    rows.add(r);
+                }
+            } while (next.size() >= batchSize);
+            return null;
+        });
+        gaps.values().removeIf(noticed -> now - noticed > gapTimeout);
+
+        List<RevokedToken> remote = new ArrayList<>(rows.size());
+        for (RevokedToken r : rows) {
+            if (published.remove(r.getId()) == null) {
+                remote.add(r);
+            }
+        }
+        // rolled back, or so late that it is given up on like a gap
+        published.values().removeIf(written -> now - written > gapTimeout);
+        apply(remote, true);
+        denyList.removeExpired(now);
+        return remote.size();
+    }
+
+    /**
+     * @return the id of the last entry seen
+     */
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    private void apply(List<RevokedToken> rows, boolean remote) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Set<Long> users = new HashSet<>();
+        Map<Long, Set<ByteBuffer>> tokens = new HashMap<>();
+        for (RevokedToken r : rows) {
+            denyList.add(r);
+            if (r.getKind() == Kind.TOKEN) {
+                tokens.computeIfAbsent(r.getUserId(), k -> new HashSet<>()).add(ByteBuffer.wrap(r.getTokenHash()));
+            } else {
+                users.add(r.getUserId());
+            }
+            applied.get(r.getKind()).increment();
+            if (remote) {
+                delay.record(Math.max(0, now - r.getDateRevoked().getTime()), TimeUnit.MILLISECONDS);
+            }
+        }
+        tokenCache.invalidateRevoked(users, tokens);
+        if (remote && !users.isEmpty()) {
+            Cache cache = entityManagerFactory.getCache();
+            for (Long id : users) {
+                cache.evict(User.class, id);
+            }
+            // emails of changed users may now map to another user or none
+            cache.unwrap(org.hibernate.Cache.class).evictQueryRegion("user-by-email");
+        }
+        if (remote) {
+            log.debug("Applied " + rows.size() + " revocations up to id " + lastId);
+        }
+    }
+}
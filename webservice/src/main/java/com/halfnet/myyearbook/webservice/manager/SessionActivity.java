@@ -0,0 +1,116 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.PreDestroy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * sliding expiration for stored tokens: every use of a token moves its
+ * expiry forward, without a database write per request<br>
+ * a use only sets the last seen time on the cached {@link TokenPrincipal},
+ * at most once per {@code webservice.session.resolution}. The last seen
+ * times of every token used since are written back with one batched update
+ * every {@code webservice.session.flush-interval}, and on shutdown
+ */
+@Component
+public class SessionActivity {
+
+    private static final String UPDATE = "UPDATE myyb_token SET last_seen = ? "
+            + "WHERE id = ? AND (last_seen IS NULL OR last_seen < ?)";
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    private final TokenCache tokenCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final long resolution;
+
+    private final Counter flushed;
+    private final Timer flushTimer;
+
+    public SessionActivity(TokenCache tokenCache, JdbcTemplate jdbcTemplate,
+            @Value("${webservice.session.sliding:true}") boolean enabled,
+            @Value("${webservice.session.resolution:60000}") long resolution,
+            MeterRegistry registry) {
+        this.tokenCache = tokenCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.resolution = resolution;
+        this.flushed = registry.counter(MetricsConstants.SESSION_FLUSHED);
+        this.flushTimer = registry.timer(MetricsConstants.SESSION_FLUSH);
+    }
+
+    /**
+     * records that a token was used, a single volatile read and at most one
+     * volatile write
+     *
+     * @param p the owner of the token, as cached by {@link TokenCache}
+     */
+    public void touch(TokenPrincipal p) {
+        if (enabled) {
+            p.touch(System.currentTimeMillis(), resolution);
+        }
+    }
+
+    /**
+     * writes the last seen time of every token used since the last flush
+     *
+     * @return the number of tokens written
+     */
+    @Scheduled(fixedDelayString = "${webservice.session.flush-interval:10000}",
+            initialDelayString = "${webservice.session.flush-interval:10000}")
+    public synchronized int flush() {
+        if (!enabled) {
+            return 0;
+        }
+        long start = System.nanoTime();
+        List<TokenPrincipal> dirty = new ArrayList<>();
+        List<Object[]> args = new ArrayList<>();
+        // the cache holds one principal per token, so each token is written once
+        tokenCache.forEachDirty(p -> {
+            Timestamp seen = new Timestamp(p.getLastSeen());
+            dirty.add(p);
+            args.add(new Object[]{seen, p.getTokenId(), seen});
+        });
+        if (args.isEmpty()) {
+            return 0;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPDATE, args);
+        } catch (DataAccessException e) {
+            // still dirty, retried next flush
+            log.error("Could not write token activity: " + Utils.exceptionStackTraceToString(e));
+            return 0;
+        }
+        for (int i = 0; i < dirty.size(); i++) {
+            dirty.get(i).markFlushed(((Timestamp) args.get(i)[0]).getTime());
+        }
+        flushed.increment(dirty.size());
+        flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return dirty.size();
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        int n = flush();
+        if (n > 0) {
+            log.info("Wrote the activity of " + n + " tokens on shutdown");
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.util.TokenGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * tokens that carry their owner and issue time, signed with HMAC-SHA256,
+ * so that they can be checked without the database<br>
+ * a token looks like {@code s1.<key id>.<user id, issue time and nonce>.<mac>}.
+ * Every configured key is accepted but only the active one signs, so a key
+ * can be rotated by adding the new key everywhere, then making it active,
+ * then removing the old one once its tokens have expired<br>
+ * revoked tokens are rejected through {@link TokenDenyList}
+ */
+@Component
+public class SignedTokens {
+
+    private static final String PREFIX = "s1.";
+    private static final int PAYLOAD_LENGTH = 32;
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder decoder = Base64.getUrlDecoder();
+
+    private final boolean enabled;
+    private final String activeKey;
+    private final Map<String, ThreadLocal<Mac>> macs = new HashMap<>();
+    private final TokenDenyList denyList;
+
+    private final Counter valid;
+    private final Counter invalid;
+    private final Counter expired;
+    private final Counter revoked;
+
+    /**
+     * @param enabled whether new tokens are signed and signed tokens are
+     * accepted
+     * @param keys the keys, each as {@code <key id>:<base 64 secret>}
+     * @param activeKey the id of the key new tokens are signed with
+     * @param denyList the revoked tokens
+     * @param registry where to publish metrics
+     */
+    public SignedTokens(@Value("${webservice.signed-tokens.enabled:false}") boolean enabled,
+            @Value("${webservice.signed-tokens.keys:}") String[] keys,
+            @Value("${webservice.signed-tokens.active-key:}") String activeKey,
+            TokenDenyList denyList, MeterRegistry registry) {
+        for (String k : keys) {
+            int i = k.indexOf(':');
+            if (k.isBlank()) {
+                continue;
+            }
+            String id = k.substring(0, Math.max(i, 0)).trim();
+            if (i < 1 || !id.matches("[A-Za-z0-9_-]{1,16}")) {
+                throw new IllegalStateException("signed token keys must look like <key id>:<base 64 secret>");
+            }
+            byte[] secret = Base64.getDecoder().decode(k.substring(i + 1).trim());
+            if (secret.length < 32) {
+                throw new IllegalStateException("signed token key " + id + " must be at least 32 bytes");
+            }
+            SecretKeySpec spec = new SecretKeySpec(secret, ALGORITHM);
+            macs.put(id, ThreadLocal.withInitial(() -> {
+                try {
+                    Mac m = Mac.getInstance(ALGORITHM);
+                    m.init(spec);
+                    return m;
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        if (enabled && !macs.containsKey(activeKey)) {
+            throw new IllegalStateException("webservice.signed-tokens.active-key must be one of webservice.signed-tokens.keys");
+        }
+        this.enabled = enabled;
+        this.activeKey = activeKey;
+        this.denyList = denyList;
+        this.valid = registry.counter(MetricsConstants.TOKEN_SIGNED, "result", "valid");
+        this.invalid = registry.counter(MetricsConstants.TOKEN_SIGNED, "result", "invalid");
+        this.expired = registry.counter(MetricsConstants.TOKEN_SIGNED, "result", "expired");
+        this.revoked = registry.counter(MetricsConstants.TOKEN_SIGNED, "result", "revoked");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param token a token
+     * @return true if the token is in the signed format, whether or not its
+     * signature is valid
+     */
+    public static boolean isSigned(String token) {
+        return token.startsWith(PREFIX);
+    }
+
+    /**
+     * creates a token signed with the active key
+     *
+     * @param userId the owner of the token
+     * @param issuedAt the issue time in milliseconds
+     * @return the token
+     */
+    public String issue(long userId, long issuedAt) {
+        byte[] payload = new byte[PAYLOAD_LENGTH];
+        ByteBuffer.wrap(payload).putLong(userId).putLong(issuedAt);
+        byte[] nonce = new byte[PAYLOAD_LENGTH - 16];
+        TokenGenerator.nextBytes(nonce);
+        System.arraycopy(nonce, 0, payload, 16, nonce.length);
+
+        String signed = PREFIX + activeKey + "." + encoder.encodeToString(payload);
+        return signed + "." + encoder.encodeToString(mac(activeKey, signed));
+    }
+
+    /**
+     * checks a signed token's signature, expiry and revocation without the
+     * database
+     *
+     * @param token the token
+     * @return the owner of the token, or null if it is not valid
+     */
+    public TokenPrincipal verify(String token) {
+        TokenPrincipal p = parse(token);
+        if (p == null) {
+            invalid.increment();
+            return null;
+        }
+        if (p.isExpired()) {
+            expired.increment();
+            return null;
+        }
+        if (denyList.isRevoked(token, p)) {
+            revoked.increment();
+            return null;
+        }
+        valid.increment();
+        return p;
+    }
+
+    /**
+     * checks a signed token's signature only
+     *
+     * @param token the token
+     * @return the owner of the token, or null if the token is malformed, its
+     * key is unknown or its signature doesn't match
+     */
+    public TokenPrincipal parse(String token) {
+        if (!isSigned(token)) {
+            return null;
+        }
+        int keyEnd = token.indexOf('.', PREFIX.length());
+        int macStart = token.lastIndexOf('.');
+        if (keyEnd < 0 || macStart <= keyEnd) {
+            return null;
+        }
+        String keyId = token.substring(PREFIX.length(), keyEnd);
+        if (!macs.containsKey(keyId)) {
+            return null;
+        }
+        byte[] payload;
+        byte[] mac;
+        try {
+            payload = decoder.decode(token.substring(keyEnd + 1, macStart));
+            mac = decoder.decode(token.substring(macStart + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length != PAYLOAD_LENGTH
+                || !MessageDigest.isEqual(mac, mac(keyId, token.substring(0, macStart)))) {
+            return null;
+        }
+        ByteBuffer b = ByteBuffer.wrap(payload);
+        return new TokenPrincipal(b.getLong(), new Date(b.getLong()));
+    }
+
+    private byte[] mac(String keyId, String signed) {
+        Mac m = macs.get(keyId).get();
+        return m.doFinal(signed.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,224 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * bounded in memory cache of token to token owner, so that authenticated
+ * requests don't need to query the database<br>
+ * each entry expires when its token does, which moves forward as the token
+ * is used. The cached principals also hold the uses that
+ * {@link SessionActivity} hasn't written back yet
+ */
+@Component
+public class TokenCache {
+
+    private final Cache<String, TokenPrincipal> cache;
+    // tokens being loaded, only used to count the callers that wait for them
+    private final Map<String, Boolean> loading = new ConcurrentHashMap<>();
+    // evicted before their last use was written back
+    private final Queue<TokenPrincipal> evictedDirty = new ConcurrentLinkedQueue<>();
+
+    private final Counter hitFound;
+    private final Counter hitNotFound;
+    private final Counter missFound;
+    private final Counter missNotFound;
+    private final Counter coalesced;
+
+    public TokenCache(@Value("${webservice.token-cache.max-size:10000}") long maxSize, MeterRegistry registry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new TokenExpiry())
+                .removalListener((String token, TokenPrincipal p, RemovalCause cause) -> {
+                    if (p != null && cause.wasEvicted() && p.isDirty()) {
+                        evictedDirty.add(p);
+                    }
+                })
+                .recordStats()
+                .build();
+        this.hitFound = registry.counter(MetricsConstants.TOKEN_LOOKUP, "cache", "hit", "result", "found");
+        this.hitNotFound = registry.counter(MetricsConstants.TOKEN_LOOKUP, "cache", "hit", "result", "not_found");
+        this.missFound = registry.counter(MetricsConstants.TOKEN_LOOKUP, "cache", "miss", "result", "found");
+        this.missNotFound = registry.counter(MetricsConstants.TOKEN_LOOKUP, "cache", "miss", "result", "not_found");
+        this.coalesced = registry.counter(MetricsConstants.LOOKUP_COALESCED, "lookup", "token");
+        CaffeineCacheMetrics.monitor(registry, cache, MetricsConstants.TOKEN_CACHE);
+    }
+
+    /**
+     * gets the owner of a token, loading it if it is not cached<br>
+     * concurrent loads of the same token share a single call to the loader,
+     * the callers that wait for another's load are counted in
+     * {@code myyb.lookup.coalesced}
+     *
+     * @param token the token
+     * @param loader loads the owner of the token, or returns null if there is
+     * none
+     * @return the owner of the token, or null if the token is unknown or
+     * expired
+     */
+    public TokenPrincipal get(String token, Function<String, TokenPrincipal> loader) {
+        boolean[] loaded = new boolean[1];
+        if (!loading.isEmpty() && loading.containsKey(token)) {
+            coalesced.increment();
+        }
+        TokenPrincipal p = cache.get(token, t -> {
+            loaded[0] = true;
+            loading.put(t, Boolean.TRUE);
+            try {
+                return loader.apply(t);
+            } finally {
+                loading.remove(t);
+            }
+        });
+        if (p != null && p.isExpired()) {
+            cache.invalidate(token);
+            p = null;
+        }
+        if (loaded[0]) {
+            (p == null ? missNotFound : missFound).increment();
+        } else {
+            (p == null ? hitNotFound : hitFound).increment();
+        }
+        return p;
+    }
+
+    /**
+     * caches a token that was just issued
+     *
+     * @param token the token
+     * @param principal the owner of the token
+     */
+    public void put(String token, TokenPrincipal principal) {
+        cache.put(token, principal);
+    }
+
+    /**
+     * removes a single token from the cache
+     *
+     * @param token the token to remove
+     */
+    public void invalidate(String token) {
+        cache.invalidate(token);
+    }
+
+    /**
+     * removes every cached token belonging to a user
+     *
+     * @param userId the id of the user
+     */
+    public void invalidateUser(long userId) {
+        cache.asMap().values().removeIf(p -> p.getUserId() == userId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * removes the cached tokens of some users, and some single tokens, in
+     * one pass over the cache<br>
+     * only the tokens of users with a single token revoked are digested
+     *
+     * @param users the ids of the users whose tokens to remove
+     * @param tokens user id to the digests of the user's tokens to remove
+     */
+    public void invalidateRevoked(Set<Long> users, Map<Long, Set<ByteBuffer>> tokens) {
+        if (users.isEmpty() && tokens.isEmpty()) {
+            return;
+        }
+        cache.asMap().entrySet().removeIf(e -> {
+            long userId = e.getValue().getUserId();
+            if (users.contains(userId)) {
+                return true;
+            }
+            Set<ByteBuffer> digests = tokens.get(userId);
+            return digests != null && digests.contains(ByteBuffer.wrap(Utils.digestToken(e.getKey())));
+        });
+    }
+
+    /**
+     * @param token the token
+     * @return the cached owner of the token, or null if it isn't cached
+     */
+    public TokenPrincipal peek(String token) {
+        return cache.getIfPresent(token);
+    }
+
+    /**
+     * goes through every principal used since its last seen time was
+     * written back, including ones evicted meanwhile
+     *
+     * @param consumer called with every such principal
+     */
+    public void forEachDirty(Consumer<TokenPrincipal> consumer) {
+        TokenPrincipal p;
+        while ((p = evictedDirty.poll()) != null) {
+            consumer.accept(p);
+        }
+        for (TokenPrincipal c : cache.asMap().values()) {
+            if (c.isDirty()) {
+                consumer.accept(c);
+            }
+        }
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.stats().evictionCount();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    private static class TokenExpiry implements Expiry<String, TokenPrincipal> {
+
+        @Override
+        public long expireAfterCreate(String key, TokenPrincipal value, long currentTime) {
+            long millis = Math.max(0, value.getExpiresAt() - System.currentTimeMillis());
+            return TimeUnit.MILLISECONDS.toNanos(millis);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, TokenPrincipal value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, TokenPrincipal value, long currentTime, long currentDuration) {
+            // the token may have been used since, see TokenPrincipal#touch
+            return expireAfterCreate(key, value, currentTime);
+        }
+    }
+}
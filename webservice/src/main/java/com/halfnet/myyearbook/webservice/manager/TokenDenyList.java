@@ -0,0 +1,75 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.entity.RevokedToken;
+import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
+
+/**
+ * the signed tokens that were revoked before they expired, held in memory
+ * and filled by {@link RevocationFeed} from every instance's revocations<br>
+ * entries are dropped once the tokens they cover have expired, so the list
+ * stays as small as the number of recent logouts
+ */
+@Component
+public class TokenDenyList {
+
+    // token digest -> when the token expires
+    private final Map<ByteBuffer, Long> tokens = new ConcurrentHashMap<>();
+    // user id -> tokens issued up to this time are revoked
+    private final Map<Long, Long> users = new ConcurrentHashMap<>();
+
+    public TokenDenyList() {
+
+    }
+
+    /**
+     * @param token a token with a valid signature
+     * @param p the owner of the token
+     * @return true if the token, or every token of its owner, was revoked
+     */
+    public boolean isRevoked(String token, TokenPrincipal p) {
+        Long before = users.get(p.getUserId());
+        if (before != null && p.getDateAdded() <= before) {
+            return true;
+        }
+        return !tokens.isEmpty() && tokens.containsKey(ByteBuffer.wrap(Utils.digestToken(token)));
+    }
+
+    /**
+     * @param r a revocation, ignored unless it revokes tokens
+     */
+    public void add(RevokedToken r) {
+        switch (r.getKind()) {
+            case TOKEN:
+                tokens.put(ByteBuffer.wrap(r.getTokenHash()), r.getExpiresAt().getTime());
+                break;
+            case USER_TOKENS:
+                users.merge(r.getUserId(), r.getDateRevoked().getTime(), Math::max);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * drops the revocations of tokens that have expired anyway
+     *
+     * @param now the current time in milliseconds
+     */
+    public void removeExpired(long now) {
+        tokens.values().removeIf(expiresAt -> expiresAt < now);
+        users.values().removeIf(before -> before + User.TIMEOUT < now);
+    }
+
+    /**
+     * @return the number of revoked tokens and users held in memory
+     */
+    public int size() {
+        return tokens.size() + users.size();
+    }
+}
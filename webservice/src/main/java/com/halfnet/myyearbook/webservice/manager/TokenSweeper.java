@@ -0,0 +1,117 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.entity.PasswordReset;
+import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * periodically deletes expired tokens, password resets and token
+ * revocations in bounded
+ * batches, so that no single delete holds locks on a large range of rows<br>
+ * the deletes go through JDBC, a native query through Hibernate would evict
+ * every region of the second level cache each time
+ */
+@Component
+public class TokenSweeper {
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    private static final String DELETE_TOKENS = "DELETE FROM myyb_token "
+            + "WHERE (last_seen < ? OR last_seen IS NULL) AND date_added < ? LIMIT ?";
+    private static final String DELETE_RESETS = "DELETE FROM myyb_password_reset WHERE date_added < ? LIMIT ?";
+    private static final String DELETE_REVOCATIONS = "DELETE FROM myyb_revoked_token WHERE expires_at < ? LIMIT ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    @Value("${webservice.token-sweeper.batch-size:1000}")
+    private int batchSize;
+
+    private volatile long lastTokensRemoved;
+    private volatile long lastResetsRemoved;
+    private volatile long lastPassMillis;
+    private volatile long totalRemoved;
+
+    public TokenSweeper() {
+
+    }
+
+    /**
+     * runs a single pass, deleting every token older than
+     * {@link User#TIMEOUT} and every password reset older than
+     * {@link PasswordReset#TIMEOUT}, and every revocation of tokens that
+     * have since expired
+     */
+    @Scheduled(fixedDelayString = "${webservice.token-sweeper.interval:60000}",
+            initialDelayString = "${webservice.token-sweeper.interval:60000}")
+    public void sweep() {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        Timestamp tokenCutoff = new Timestamp(now - User.TIMEOUT);
+        long tokens = deleteInBatches(limit -> jdbcTemplate.update(DELETE_TOKENS, tokenCutoff, tokenCutoff, limit));
+        Timestamp resetCutoff = new Timestamp(now - PasswordReset.TIMEOUT);
+        long resets = deleteInBatches(limit -> jdbcTemplate.update(DELETE_RESETS, resetCutoff, limit));
+        Timestamp revocationCutoff = new Timestamp(now);
+        long revocations = deleteInBatches(limit -> jdbcTemplate.update(DELETE_REVOCATIONS, revocationCutoff, limit));
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        this.lastTokensRemoved = tokens;
+        this.lastResetsRemoved = resets;
+        this.lastPassMillis = millis;
+        this.totalRemoved += tokens + resets + revocations;
+        registry.timer(MetricsConstants.TOKEN_SWEEP).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        registry.counter(MetricsConstants.TOKEN_SWEEP_REMOVED, "table", "token").increment(tokens);
+        registry.counter(MetricsConstants.TOKEN_SWEEP_REMOVED, "table", "password_reset").increment(resets);
+        registry.counter(MetricsConstants.TOKEN_SWEEP_REMOVED, "table", "revoked_token").increment(revocations);
+        if (tokens + resets + revocations > 0) {
+            log.info("Token sweep removed " + tokens + " tokens, " + resets + " password resets and "
+                    + revocations + " revocations in " + millis + "ms");
+        }
+    }
+
+    private long deleteInBatches(BatchDelete delete) {
+        long removed = 0;
+        int n;
+        do {
+            n = delete.delete(batchSize);
+            removed += n;
+        } while (n >= batchSize);
+        return removed;
+    }
+
+    public long getLastTokensRemoved() {
+        return lastTokensRemoved;
+    }
+
+    public long getLastResetsRemoved() {
+        return lastResetsRemoved;
+    }
+
+    public long getLastPassMillis() {
+        return lastPassMillis;
+    }
+
+    public long getTotalRemoved() {
+        return totalRemoved;
+    }
+
+    @FunctionalInterface
+    private interface BatchDelete {
+
+        int delete(int limit);
+    }
+}
@@ -0,0 +1,263 @@
+package com.halfnet.myyearbook.webservice.manager;
+
+import com.halfnet.myyearbook.webservice.datasource.ReadYourWrites;
+import com.halfnet.myyearbook.webservice.repo.UserRepo;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.persistence.EntityManagerFactory;
+import org.json.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * imports users in chunks: one duplicate check query per chunk, passwords
+ * hashed in parallel, and the rows inserted with a single JDBC batch<br>
+ * inserts go through JDBC rather than Hibernate because the IDENTITY ids of
+ * {@code User} stop Hibernate from batching inserts
+ */
+@Component
+public class UserImporter {
+
+    private static final String INSERT = "INSERT INTO myyb_user "
+            + "(firstname, lastname, email_address, email_normalized, email_confirmed, deleted, password_hash) "
+            + "VALUES (?, ?, ?, ?, false, false, ?)";
+    // every user has a settings row, as signups get in addUserIfNotExists
+    private static final String INSERT_SETTINGS = "INSERT INTO myyb_user_settings (user_id) "
+            + "SELECT id FROM myyb_user WHERE email_normalized = ?";
+
+    @Autowired
+    private UserRepo userRepo;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private EmailBloomFilter emailFilter;
+
+    @Autowired
+    private ReadYourWrites readYourWrites;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${webservice.user-import.batch-size:500}")
+    private int batchSize;
+
+    public UserImporter() {
+
+    }
+
+    /**
+     * imports users, reporting the result of every row as it is known<br>
+     * a bad row only fails itself, never the rest of the import
+     *
+     * @param rows the users to import
+     * @param results called with the result of every row
+     * @param validator checks a row before it is imported, returning why it
+     * is invalid or null if it is valid
+     */
+    public void importUsers(Iterator<Row> rows, Consumer<Result> results,
+            Function<Row, String> validator) {
+        Set<String> seen = new HashSet<>();
+        List<Row> chunk = new ArrayList<>(batchSize);
+        try {
+            while (rows.hasNext()) {
+                Row r = rows.next();
+                String invalid = validator.apply(r);
+                if (invalid != null) {
+                    results.accept(new Result(r, Status.INVALID, invalid));
+                } else if (!seen.add(Utils.normalizeEmail(r.email))) {
+                    results.accept(new Result(r, Status.DUPLICATE, "repeated in this import"));
+                } else {
+                    chunk.add(r);
+                }
+                if (chunk.size() >= batchSize) {
+                    importChunk(chunk, results);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                importChunk(chunk, results);
+            }
+        } finally {
+            // cached 'no user with this email' results are now stale, also when the import was cut short
+            entityManagerFactory.getCache().unwrap(org.hibernate.Cache.class).evictQueryRegions();
+        }
+    }
+
+    private void importChunk(List<Row> chunk, Consumer<Result> results) {
+        Set<String> emails = new HashSet<>();
+        for (Row r : chunk) {
+            emails.add(Utils.normalizeEmail(r.email));
+        }
+        Set<String> existing = userRepo.findExistingNormalizedEmails(emails);
+
+        List<Row> toInsert = new ArrayList<>(chunk.size());
+        List<String> passwords = new ArrayList<>(chunk.size());
+        for (Row r : chunk) {
+            if (existing.contains(Utils.normalizeEmail(r.email))) {
+                results.accept(new Result(r, Status.DUPLICATE, "user already exists"));
+            } else {
+                toInsert.add(r);
+                passwords.add(r.password);
+            }
+        }
+        if (toInsert.isEmpty()) {
+            return;
+        }
+        List<String> hashes = passwordHasher.hashPasswords(passwords);
+
+        List<Object[]> args = new ArrayList<>(toInsert.size());
+        List<Object[]> settingsArgs = new ArrayList<>(toInsert.size());
+        for (int i = 0; i < toInsert.size(); i++) {
+            args.add(insertArgs(toInsert.get(i), hashes.get(i)));
+            settingsArgs.add(new Object[]{Utils.normalizeEmail(toInsert.get(i).email)});
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        try {
+            // all or nothing, so a failed batch can be retried row by row
+            tx.execute(status -> {
+                jdbcTemplate.batchUpdate(INSERT, args);
+                return jdbcTemplate.batchUpdate(INSERT_SETTINGS, settingsArgs);
+            });
+            for (Row r : toInsert) {
+                created(r, results);
+            }
+        } catch (DataAccessException e) {
+            // someone else added one of the users meanwhile, find out which row by row
+            for (int i = 0; i < toInsert.size(); i++) {
+                Row r = toInsert.get(i);
+                Object[] rowArgs = args.get(i);
+                Object[] rowSettingsArgs = settingsArgs.get(i);
+                try {
+                    tx.execute(status -> {
+                        jdbcTemplate.update(INSERT, rowArgs);
+                        return jdbcTemplate.update(INSERT_SETTINGS, rowSettingsArgs);
+                    });
+                    created(r, results);
+                } catch (DuplicateKeyException ex) {
+                    results.accept(new Result(r, Status.DUPLICATE, "user already exists"));
+                } catch (DataAccessException ex) {
+                    results.accept(new Result(r, Status.FAILED, ex.getMostSpecificCause().getMessage()));
+                }
+            }
+        }
+    }
+
+    private void created(Row r, Consumer<Result> results) {
+        emailFilter.add(r.email);
+        readYourWrites.written(UserManager.emailKey(Utils.normalizeEmail(r.email)));
+        results.accept(new Result(r, Status.CREATED, null));
+    }
+
+    private static Object[] insertArgs(Row r, String hash) {
+        return new Object[]{r.firstname, r.lastname, r.email, Utils.normalizeEmail(r.email), hash};
+    }
+
+    /**
+     * a user to import
+     */
+    public static class Row {
+
+        private final long line;
+        private final String firstname;
+        private final String lastname;
+        private final String email;
+        private final String password;
+
+        public Row(long line, String firstname, String lastname, String email, String password) {
+            this.line = line;
+            this.firstname = firstname;
+            this.lastname = lastname;
+            this.email = email;
+            this.password = password;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getFirstname() {
+            return firstname;
+        }
+
+        public String getLastname() {
+            return lastname;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getPassword() {
+            return password;
+        }
+    }
+
+    public enum Status {
+        CREATED, DUPLICATE, INVALID, FAILED
+    }
+
+    /**
+     * what happened to a single imported row
+     */
+    public static class Result {
+
+        private final long line;
+        private final String email;
+        private final Status status;
+        private final String message;
+
+        public Result(Row row, Status status, String message) {
+            this.line = row.line;
+            this.email = row.email;
+            this.status = status;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public JSONObject toJSON() {
+            JSONObject ret = new JSONObject()
+                    .put("line", line)
+                    .put("email", email == null ? JSONObject.NULL : email)
+                    .put("status", status.name());
+            if (message != null) {
+                ret.put("message", message);
+            }
+            return ret;
+        }
+    }
+}
@@ -1,23 +1,55 @@
 package com.halfnet.myyearbook.webservice.manager;
 
+import com.halfnet.myyearbook.webservice.audit.AuditEvent;
+import com.halfnet.myyearbook.webservice.audit.AuditLog;
+import com.halfnet.myyearbook.webservice.datasource.ReadYourWrites;
+import com.halfnet.myyearbook.webservice.datasource.ReplicaRoutingDataSource;
 import com.halfnet.myyearbook.webservice.entity.PasswordReset;
 import com.halfnet.myyearbook.webservice.entity.Token;
 import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.entity.UserSettings;
+import com.halfnet.myyearbook.webservice.exception.ServiceBusyException;
+import com.halfnet.myyearbook.webservice.exception.TooManyAttemptsException;
+import com.halfnet.myyearbook.webservice.metrics.MetricsConstants;
+import com.halfnet.myyearbook.webservice.projection.PasswordResetSummary;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.projection.UserSummary;
 import com.halfnet.myyearbook.webservice.repo.PasswordResetRepo;
 import com.halfnet.myyearbook.webservice.repo.TokenRepo;
+import com.halfnet.myyearbook.webservice.repo.UserSettingsRepo;
 import com.halfnet.myyearbook.webservice.repo.UserRepo;
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import com.halfnet.myyearbook.webservice.util.SingleFlight;
 import com.halfnet.myyearbook.webservice.util.Utils;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.sql.SQLException;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import javax.annotation.PostConstruct;
 import javax.validation.constraints.NotNull;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 @Service
 public class UserManager {
 
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
     @Autowired
     private UserRepo userRepo;
     
@@ -26,11 +58,75 @@ public class UserManager {
 
     @Autowired
     private PasswordResetRepo passwordResetRepo;
+
+    @Autowired
+    private UserSettingsRepo userSettingsRepo;
+
+    @Autowired
+    private TokenCache tokenCache;
+
+    @Autowired
+    private PasswordHasher passwordHasher;
+
+    @Autowired
+    private EmailBloomFilter emailFilter;
+
+    @Autowired
+    private UserImporter userImporter;
+
+    @Autowired
+    private ReadYourWrites readYourWrites;
+
+    @Autowired
+    private SignedTokens signedTokens;
+
+    @Autowired
+    private RevocationFeed revocationFeed;
+
+    @Autowired
+    private AuditLog auditLog;
+
+    @Autowired
+    private BulkUserDeleter bulkUserDeleter;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private SessionActivity sessionActivity;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // normalized emails of the accounts allowed to import, deactivate and purge users
+    @Value("${webservice.admins:}")
+    private Set<String> admins;
+
+    // concurrent requests of a client all look up the same user at once. Only the query is shared, every caller
+    // then gets its own instance from the second level cache, never one another request may be changing
+    private SingleFlight<Long, Boolean> userLookups;
+    private SingleFlight<String, Long> emailLookups;
     
     public UserManager() {
 
     }
 
+    @PostConstruct
+    private void init() {
+        userLookups = new SingleFlight<>(registry.counter(MetricsConstants.LOOKUP_COALESCED, "lookup", "user")::increment);
+        emailLookups = new SingleFlight<>(registry.counter(MetricsConstants.LOOKUP_COALESCED, "lookup", "email")::increment);
+        Set<String> normalized = new HashSet<>();
+        for (String email : admins) {
+            if (!email.isBlank()) {
+                normalized.add(Utils.normalizeEmail(email.trim()));
+            }
+        }
+        admins = normalized;
+    }
+
     /**
      * checks to see if the password given matches the Password Requirements
      *
@@ -42,7 +138,33 @@ public class UserManager {
     }
     
     public boolean doesTokenExist(String token){
-        return this.tokenRepo.existsByToken(token);
+        return this.getPrincipalByToken(token) != null;
+    }
+
+    /**
+     * gets the owner of a token without loading the user, served from the
+     * token cache when possible<br>
+     * counts as a use of the token, which moves its expiry forward, see
+     * {@link SessionActivity}
+     *
+     * @param token the token
+     * @return the owner of the token, or null if the token is unknown or
+     * expired
+     */
+    public TokenPrincipal getPrincipalByToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        if (signedTokens.isEnabled() && SignedTokens.isSigned(token)) {
+            return signedTokens.verify(token);
+        }
+        // a replica may not have seen a login or logout of this token yet
+        TokenPrincipal p = tokenCache.get(token, t -> readYourWrites.read(tokenKey(t),
+                () -> tokenRepo.findPrincipalByToken(t)));
+        if (p != null) {
+            sessionActivity.touch(p);
+        }
+        return p;
     }
 
     /**
@@ -58,36 +180,105 @@ public class UserManager {
     }
 
     /**
-     * Gets a User Object from the Database given an ID
+     * Gets a User Object from the Database given an ID<br>
+     * concurrent calls for the same id share one query, each gets its own
+     * instance of the user
      *
      * @param id the ID of the User
      * @return A User Object with the given ID
      * @throws SQLException If there is an error when accessing the Database
      */
     public User getUserByID(long id) throws SQLException {
-        return userRepo.findById(id).orElse(null);
+        return findUser(id);
     }
 
+    private User findUser(long id) {
+        // the caller that runs the shared load keeps its instance, the ones
+        // that waited only learn whether the user exists and load their own
+        // copy, which the shared load has put in the second level cache
+        User[] loaded = new User[1];
+        boolean exists = userLookups.get(id, () -> (loaded[0] = loadUser(id)) != null);
+        if (loaded[0] != null) {
+            return loaded[0];
+        }
+        return exists ? loadUser(id) : null;
+    }
+
+    private User loadUser(long id) {
+        return readYourWrites.read(userKey(id), () -> userRepo.findById(id).orElse(null));
+    }
+
+    /**
+     * gets a user by email, ignoring case<br>
+     * concurrent calls for the same email share one query, each gets its own
+     * instance of the user
+     *
+     * @param email the email
+     * @return the user, or null if there is none
+     */
+    public User getUserByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String normalized = Utils.normalizeEmail(email);
+        // a replica may not have a user that just signed up here yet
+        return readYourWrites.read(emailKey(normalized), () -> {
+            Long id = emailLookups.get(normalized, () -> userRepo.findIdByEmailNormalized(normalized));
+            return id == null ? null : findUser(id);
+        });
+    }
+
+    /**
+     * loads every user and their tokens at once, prefer
+     * {@link #getUserPage} or {@link #forEachUser} for large user bases
+     *
+     * @return every user
+     * @throws SQLException If there is an error when accessing the Database
+     */
     public Iterable<User> getUsers() throws SQLException {
-        return userRepo.findAll();
+        return userRepo.findAllWithTokens();
+    }
+
+    /**
+     * gets a page of users in id order, pass the id of the last user of a
+     * page to get the next one
+     *
+     * @param afterId only users with a greater id are returned, 0 for the
+     * first page
+     * @param limit the maximum number of users to return
+     * @return the users
+     */
+    public List<UserSummary> getUserPage(long afterId, int limit) {
+        return userRepo.findSummariesAfter(afterId, PageRequest.of(0, limit));
     }
 
     /**
-     * returns a currently logged in user based off of the token
+     * streams every user in id order through a consumer without holding
+     * them all in memory
+     *
+     * @param consumer called with every user
+     */
+    @Transactional(readOnly = true)
+    public void forEachUser(Consumer<UserSummary> consumer) {
+        try (Stream<UserSummary> users = userRepo.streamSummaries()) {
+            users.forEach(consumer);
+        }
+    }
+
+    /**
+     * returns a currently logged in user based off of the token<br>
+     * concurrent calls for the same token share one token lookup and one
+     * user lookup
      *
      * @param token the token
      * @return the user
      */
     public User getUserByToken(String token) {
-        Token t = tokenRepo.getByToken(token);
-        if(t == null){
+        TokenPrincipal p = getPrincipalByToken(token);
+        if(p == null){
             return null;
         }
-        User user = t.getUser();//userRepo.findByToken(token);
-        if (user == null) {
-            //throw new RuntimeException("user token is invalid [" + token + "]");
-        }
-        return user;
+        return findUser(p.getUserId());
     }
 
     /**
@@ -108,7 +299,26 @@ public class UserManager {
      * @return true if there is a logged in user with the token
      */
     public boolean isLoggedIn(String token) {
-        return this.getUserByToken(token) != null;
+        return this.getPrincipalByToken(token) != null;
+    }
+
+    /**
+     * checks if a token belongs to one of the administrators listed in
+     * {@code webservice.admins}
+     *
+     * @param token the token to check
+     * @return true if the owner of the token is an administrator
+     */
+    public boolean isAdmin(String token) {
+        if (admins.isEmpty()) {
+            return false;
+        }
+        TokenPrincipal p = getPrincipalByToken(token);
+        if (p == null) {
+            return false;
+        }
+        User u = findUser(p.getUserId());
+        return u != null && !u.isDeleted() && admins.contains(u.getEmailNormalized());
     }
 
     /**
@@ -118,7 +328,8 @@ public class UserManager {
      * @return true if the user exists
      */
     public boolean userExists(String email) {
-        return userRepo.existsByEmailIgnoreCase(email);
+        String normalized = Utils.normalizeEmail(email);
+        return readYourWrites.read(emailKey(normalized), () -> userRepo.existsByEmailNormalized(normalized));
     }
 
     /**
@@ -138,12 +349,14 @@ public class UserManager {
      * @return true if the user is logged in
      */
     public boolean isUserLoggedIn(String email) {
-        boolean loggedIn = false;
-        User user = userRepo.findByEmailIgnoreCase(email);
-        if (user != null && !user.getTokens().isEmpty()) {
-            loggedIn = true;
+        String normalized = Utils.normalizeEmail(email);
+        Long id = readYourWrites.read(emailKey(normalized),
+                () -> emailLookups.get(normalized, () -> userRepo.findIdByEmailNormalized(normalized)));
+        if (id == null) {
+            return false;
         }
-        return loggedIn;
+        Date since = new Date(System.currentTimeMillis() - User.TIMEOUT);
+        return readYourWrites.read(tokensKey(id), () -> tokenRepo.existsActiveByEmail(normalized, since));
     }
 
     /**
@@ -153,11 +366,16 @@ public class UserManager {
      * @param token the token to remove
      */
     public void logoutUser(String email, String token) {
-        User user = userRepo.findByEmailIgnoreCase(email);
-        if (user != null && user.isValidToken(token)) {
-            user.removeToken(token);
-            userRepo.save(user);
+        TokenPrincipal p = ownerOf(token);
+        if (tokenRepo.deleteByEmailAndTokenHash(Utils.normalizeEmail(email), Utils.digestToken(token)) > 0) {
+            revoke(token, p);
+            auditLog.record(AuditEvent.LOGOUT, p == null ? 0 : p.getUserId(), null, token);
         }
+        if (p != null) {
+            readYourWrites.written(tokensKey(p.getUserId()));
+        }
+        readYourWrites.written(tokenKey(token));
+        tokenCache.invalidate(token);
     }
 
     /**
@@ -167,7 +385,54 @@ public class UserManager {
      * @param token the token to remove
      */
     public void logoutUser(User u, String token) {
-        logoutUser(u.getEmailAddress(), token);
+        TokenPrincipal p = ownerOf(token);
+        if (tokenRepo.deleteByUserIdAndTokenHash(u.getId(), Utils.digestToken(token)) > 0) {
+            revoke(token, p);
+            auditLog.record(AuditEvent.LOGOUT, u.getId(), null, token);
+        }
+        readYourWrites.written(tokensKey(u.getId()));
+        readYourWrites.written(tokenKey(token));
+        tokenCache.invalidate(token);
+    }
+
+    /**
+     * removes a token, logging out whoever was using it
+     *
+     * @param token the token to remove
+     */
+    public void removeToken(String token) {
+        TokenPrincipal p = ownerOf(token);
+        if (tokenRepo.deleteByTokenHash(Utils.digestToken(token)) > 0 || p != null) {
+            auditLog.record(AuditEvent.TOKEN_REVOKED, p == null ? 0 : p.getUserId(), null, token);
+        }
+        revoke(token, p);
+        if (p != null) {
+            readYourWrites.written(tokensKey(p.getUserId()));
+        }
+        readYourWrites.written(tokenKey(token));
+        tokenCache.invalidate(token);
+    }
+
+    /**
+     * finds who a token belongs to, from the token itself when signed, or
+     * else from the cache or the primary, since a replica may not have seen
+     * the token yet
+     */
+    private TokenPrincipal ownerOf(String token) {
+        if (signedTokens.isEnabled() && SignedTokens.isSigned(token)) {
+            return signedTokens.parse(token);
+        }
+        TokenPrincipal p = tokenCache.peek(token);
+        return p != null ? p : ReplicaRoutingDataSource.onPrimary(() -> tokenRepo.findPrincipalByToken(token));
+    }
+
+    /**
+     * tells every instance to stop accepting a token
+     */
+    private void revoke(String token, TokenPrincipal p) {
+        if (p != null && !p.isExpired()) {
+            revocationFeed.publishToken(token, p);
+        }
     }
 
     /**
@@ -177,38 +442,250 @@ public class UserManager {
      * @param token the token to add
      */
     public void loginUser(User u, String token) {
-        User user = userRepo.findByEmailIgnoreCase(u.getEmailAddress());
+        loginUser(u.getId(), token);
+    }
+
+    /**
+     * logs in a user by inserting a single token row, without loading the
+     * user or its other tokens<br>
+     * expired tokens are removed by {@link TokenSweeper}
+     *
+     * @param userId the id of the user to login
+     * @param token the token to add
+     */
+    public void loginUser(long userId, String token) {
+        addToken(userId, token, new Date());
+    }
+
+    /**
+     * logs in a user with a new token, signed when
+     * {@code webservice.signed-tokens.enabled} is set so that it can be
+     * checked without the database<br>
+     * the token is stored either way, so sessions can still be listed and
+     * revoked
+     *
+     * @param userId the id of the user to login
+     * @return the new token, or null if there is no such user or it is a
+     * debugging account that already has a token
+     */
+    public String loginUser(long userId) {
+        Date now = new Date();
+        String token = signedTokens.isEnabled() ? signedTokens.issue(userId, now.getTime()) : Utils.generateToken();
+        return addToken(userId, token, now) ? token : null;
+    }
+
+    private boolean addToken(long userId, String token, Date dateAdded) {
         // don't reset token if id < 0 as that is used for debugging and should not get reset
         //except Ethan Ferguson gets the id '-1'
-        if (user != null && (user.getId() >= -1 || user.getTokens().isEmpty())) {
-            user.addToken(token);
-            userRepo.save(user);
+        // on the primary, a replica may not have the token yet
+        if (userId < -1 && ReplicaRoutingDataSource.onPrimary(() -> tokenRepo.existsByUserId(userId))) {
+            return false;
         }
-
+        Token t = new Token();
+        t.setToken(token);
+        t.setDateAdded(dateAdded);
+        t.setLastSeen(dateAdded);
+        t.setUser(userRepo.getOne(userId));
+        try {
+            tokenRepo.save(t);
+        } catch (DataIntegrityViolationException e) {
+            // the foreign key to the user failed, logging in a user that
+            // doesn't exist is ignored, as it was before tokens were inserted
+            // directly
+            return false;
+        }
+        readYourWrites.written(tokenKey(token));
+        readYourWrites.written(tokensKey(userId));
+        tokenCache.put(token, new TokenPrincipal(t.getId(), userId, t.getDateAdded(), null));
+        auditLog.record(AuditEvent.TOKEN_ISSUED, userId, null, token);
+        return true;
     }
 
     /**
      * adds a new user to the database if there isnt already a user with the
-     * same email
+     * same email, along with empty settings
      *
      * @param u the user entity with the data
      * @return true if a user was added
      */
     public boolean addUserIfNotExists(User u) {
-        if (userExists(u.getEmailAddress())) {
+        // a miss in the email filter skips the lookup, the unique email
+        // column still catches a user the filter doesn't know about yet
+        if (emailFilter.mightExist(u.getEmailAddress()) && userExists(u.getEmailAddress())) {
             return false;
         }
-        userRepo.save(u);
+        try {
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                userRepo.save(u);
+                UserSettings s = new UserSettings();
+                s.setUser(u);
+                userSettingsRepo.save(s);
+            });
+        } catch (DataIntegrityViolationException e) {
+            // added by another instance since this one's email filter was built
+            return false;
+        }
+        emailFilter.add(u.getEmailAddress());
+        readYourWrites.written(emailKey(u.getEmailNormalized()));
         return true;
     }
 
+    /**
+     * imports users in bulk, see {@link UserImporter}<br>
+     * rows are checked against the same email and password requirements as
+     * signups, and a bad row only fails itself
+     *
+     * @param rows the users to import
+     * @param results called with the result of every row
+     */
+    public void importUsers(Iterator<UserImporter.Row> rows, Consumer<UserImporter.Result> results) {
+        userImporter.importUsers(rows, results, r -> {
+            if (r.getFirstname() == null || r.getLastname() == null) {
+                return "missing name";
+            }
+            if (r.getEmail() == null || !emailMatchesCustomReqs(r.getEmail())) {
+                return "invalid email";
+            }
+            if (r.getPassword() == null || !passwordMatchesCustomReqs(r.getPassword())) {
+                return "invalid password";
+            }
+            return null;
+        });
+    }
+
     /**
      * adds a new user to the database
      *
      * @param u the user entity with the data
      */
     public void addUserOrUpdate(User u) {
+        boolean existing = u.getId() != 0;
         userRepo.save(u);
+        emailFilter.add(u.getEmailAddress());
+        readYourWrites.written(userKey(u.getId()));
+        readYourWrites.written(emailKey(u.getEmailNormalized()));
+        if (existing) {
+            // the password or tokens may have changed, and other instances cache the user too
+            revocationFeed.publishUser(u.getId());
+        }
+    }
+
+    /**
+     * checks a user's password on the BCrypt pool, throttled by the user's
+     * email only
+     *
+     * @param u the user
+     * @param password the plaintext password
+     * @return true if the password matches the user's password hash
+     * @throws ServiceBusyException if too many logins are already in progress
+     * @throws TooManyAttemptsException if there were too many recent attempts
+     * for the user
+     * @deprecated logins should go through {@link #login}, or pass the
+     * client's address so it is throttled too
+     */
+    @Deprecated
+    public boolean checkPassword(@NotNull User u, String password) {
+        return checkPassword(u, password, null);
+    }
+
+    /**
+     * checks a user's password on the BCrypt pool, unless there were too
+     * many recent attempts for the user or from the client, see
+     * {@link LoginThrottle}<br>
+     * if the password matches a hash of a different cost than new hashes,
+     * it is rehashed in the background
+     *
+     * @param u the user
+     * @param password the plaintext password
+     * @param clientAddress the address of the client, or null if unknown
+     * @return true if the password matches the user's password hash
+     * @throws ServiceBusyException if too many logins are already in progress
+     * @throws TooManyAttemptsException if there were too many recent attempts
+     * for the user or from the client
+     */
+    public boolean checkPassword(@NotNull User u, String password, String clientAddress) {
+        throttle(u.getEmailAddress(), u.getId(), clientAddress);
+        return verifyPassword(u, password, clientAddress);
+    }
+
+    /**
+     * logs in a user by email and password, see {@link #loginUser(long)}<br>
+     * the attempt is throttled before the user is looked up, so guesses
+     * against emails that aren't registered are limited too
+     *
+     * @param email the email of the user
+     * @param password the plaintext password
+     * @param clientAddress the address of the client, or null if unknown
+     * @return the new token, or null if there is no such user or the password
+     * is wrong
+     * @throws ServiceBusyException if too many logins are already in progress
+     * @throws TooManyAttemptsException if there were too many recent attempts
+     * for the email or from the client
+     */
+    public String login(String email, String password, String clientAddress) {
+        throttle(email, 0, clientAddress);
+        User u = getUserByEmail(email);
+        if (!singleCheck(u)) {
+            auditLog.record(AuditEvent.PASSWORD_FAILED, 0, clientAddress, null);
+            return null;
+        }
+        return verifyPassword(u, password, clientAddress) ? loginUser(u.getId()) : null;
+    }
+
+    private void throttle(String email, long userId, String clientAddress) {
+        try {
+            loginThrottle.attempt(email, clientAddress);
+        } catch (TooManyAttemptsException e) {
+            auditLog.record(AuditEvent.LOGIN_THROTTLED, userId, clientAddress, null);
+            throw e;
+        }
+    }
+
+    private boolean verifyPassword(User u, String password, String clientAddress) {
+        boolean ok = passwordHasher.checkPassword(password, u.getPasswordHash());
+        auditLog.record(ok ? AuditEvent.PASSWORD_OK : AuditEvent.PASSWORD_FAILED, u.getId(), clientAddress, null);
+        if (ok) {
+            loginThrottle.succeeded(u.getEmailAddress());
+            if (passwordHasher.needsRehash(u.getPasswordHash())) {
+                rehash(u.getId(), u.getPasswordHash(), password);
+            }
+        }
+        return ok;
+    }
+
+    private void rehash(long userId, String oldHash, String password) {
+        passwordHasher.rehash(password).thenAccept(newHash -> {
+            if (newHash == null) {
+                return;
+            }
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                // only if the password wasn't changed meanwhile
+                User u = userRepo.findById(userId).orElse(null);
+                if (u != null && oldHash.equals(u.getPasswordHash())) {
+                    u.setPasswordHash(newHash);
+                }
+            });
+            readYourWrites.written(userKey(userId));
+        }).exceptionally(e -> {
+            log.error("Could not rehash the password of user " + userId + ": " + Utils.exceptionStackTraceToString(e));
+            return null;
+        });
+    }
+
+    /**
+     * sets a new password for a user
+     *
+     * @param u the user
+     * @param password the new plaintext password
+     * @throws ServiceBusyException if too many passwords are already being
+     * hashed
+     */
+    public void changePassword(@NotNull User u, String password) {
+        u.setPasswordHash(passwordHasher.hashPassword(password));
+        userRepo.save(u);
+        readYourWrites.written(userKey(u.getId()));
+        revocationFeed.publishUser(u.getId());
+        auditLog.record(AuditEvent.PASSWORD_CHANGED, u.getId(), null, null);
     }
 
     /**
@@ -233,34 +710,123 @@ public class UserManager {
         return u != null && !u.isDeleted();
     }
     
+    /**
+     * gets the settings of a user
+     *
+     * @param userId the id of the user
+     * @return the settings or null if the user has none
+     */
+    public UserSettings getSettings(long userId) {
+        return readYourWrites.read(userKey(userId), () -> userSettingsRepo.findByUserId(userId));
+    }
+    
     public void deleteUser(User u){
-        userRepo.delete(u);
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            passwordResetRepo.deleteByUserId(u.getId());
+            userSettingsRepo.deleteByUserId(u.getId());
+            userRepo.delete(u);
+        });
+        readYourWrites.written(resetKey(u.getId()));
+        readYourWrites.written(userKey(u.getId()));
+        readYourWrites.written(emailKey(u.getEmailNormalized()));
+        revocationFeed.publishUserTokens(u.getId());
+        auditLog.record(AuditEvent.USER_TOKENS_REVOKED, u.getId(), null, null);
     }
     
+    /**
+     * marks many users as deleted and logs them out, in chunks
+     *
+     * @param filter the users to deactivate
+     * @param progress called after every chunk and once more when done
+     */
+    public void deactivateUsers(BulkUserDeleter.Filter filter, Consumer<BulkUserDeleter.Progress> progress) {
+        bulkUserDeleter.deactivate(filter, progress);
+    }
+
+    /**
+     * deletes many users and everything that belongs to them, in chunks
+     *
+     * @param filter the users to purge
+     * @param progress called after every chunk and once more when done
+     */
+    public void purgeUsers(BulkUserDeleter.Filter filter, Consumer<BulkUserDeleter.Progress> progress) {
+        bulkUserDeleter.purge(filter, progress);
+    }
+
     public void resetPassword(@NotNull User u) {
-        PasswordReset r = u.getPasswordReset();
+        PasswordReset r = ReplicaRoutingDataSource.onPrimary(() -> passwordResetRepo.findByUserId(u.getId()));
         if(r == null) {
             r = new PasswordReset();
         }
         r.setNewPassword(Utils.genPasswordReset());
+        r.setDateAdded(new Date());
         r.setUser(u);
         passwordResetRepo.save(r);
+        readYourWrites.written(resetKey(u.getId()));
+        auditLog.record(AuditEvent.PASSWORD_RESET_REQUESTED, u.getId(), null, null);
     }
     
     public boolean checkPasswordReset(User u, String password){
-        if(u.getPasswordReset() == null){
-            return false;
-        }
-        return u.getPasswordReset().getNewPassword().equals(password);
+        return checkPasswordReset(u.getId(), password);
+    }
+
+    /**
+     * checks a password reset code without loading the user
+     *
+     * @param userId the id of the user
+     * @param password the reset code
+     * @return true if the user has an unexpired reset with the code
+     */
+    public boolean checkPasswordReset(long userId, String password){
+        PasswordReset r = readYourWrites.read(resetKey(userId), () -> passwordResetRepo.findByUserId(userId));
+        boolean ok = r != null && !r.isExpired() && password != null
+                && MessageDigest.isEqual(r.getNewPassword().getBytes(StandardCharsets.UTF_8),
+                        password.getBytes(StandardCharsets.UTF_8));
+        auditLog.record(ok ? AuditEvent.PASSWORD_RESET_OK : AuditEvent.PASSWORD_RESET_FAILED, userId, null, null);
+        return ok;
     }
     
+    /**
+     * loads every pending password reset along with its user, prefer
+     * {@link #getPasswordResetPage} for large user bases
+     *
+     * @return every reset
+     */
     public Set<PasswordReset> getPasswordResets() {
-        Set<PasswordReset> ret = new HashSet<>();
-        for (User u : userRepo.findAll()) {
-            if(u.getPasswordReset() != null){
-                ret.add(u.getPasswordReset());
-            }
-        }
-        return ret;
+        return new HashSet<>(passwordResetRepo.findAllWithUser());
+    }
+
+    /**
+     * gets a page of pending password resets in id order, pass the id of the
+     * last reset of a page to get the next one
+     *
+     * @param afterId only resets with a greater id are returned, 0 for the
+     * first page
+     * @param limit the maximum number of resets to return
+     * @return the resets
+     */
+    public List<PasswordResetSummary> getPasswordResetPage(long afterId, int limit) {
+        return passwordResetRepo.findSummariesAfter(afterId, PageRequest.of(0, limit));
+    }
+
+    private static String tokenKey(String token) {
+        return "token:" + token;
+    }
+
+    // a user's tokens, for checks that don't go through a single token
+    private static String tokensKey(long userId) {
+        return "tokens:" + userId;
+    }
+
+    private static String resetKey(long userId) {
+        return "reset:" + userId;
+    }
+
+    private static String userKey(long id) {
+        return "user:" + id;
+    }
+
+    static String emailKey(String normalizedEmail) {
+        return "email:" + normalizedEmail;
     }
 }
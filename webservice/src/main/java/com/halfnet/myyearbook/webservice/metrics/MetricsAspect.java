@@ -0,0 +1,59 @@
+package com.halfnet.myyearbook.webservice.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.concurrent.ConcurrentHashMap;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.aop.framework.AopProxyUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * times every public {@code UserManager} method and every repository query,
+ * tagged with the method and whether it threw
+ */
+@Aspect
+@Component
+public class MetricsAspect {
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final ConcurrentHashMap<Class<?>, String> repoNames = new ConcurrentHashMap<>();
+
+    public MetricsAspect() {
+
+    }
+
+    @Around("execution(public * com.halfnet.myyearbook.webservice.manager.UserManager.*(..))")
+    public Object timeUserManager(ProceedingJoinPoint jp) throws Throwable {
+        return time(jp, MetricsConstants.USER_MANAGER, "UserManager");
+    }
+
+    @Around("execution(* org.springframework.data.repository.Repository+.*(..))")
+    public Object timeRepository(ProceedingJoinPoint jp) throws Throwable {
+        String repo = repoNames.computeIfAbsent(jp.getThis().getClass(), c -> {
+            Class<?>[] ifs = AopProxyUtils.proxiedUserInterfaces(jp.getThis());
+            return ifs.length == 0 ? c.getSimpleName() : ifs[0].getSimpleName();
+        });
+        return time(jp, MetricsConstants.REPOSITORY, repo);
+    }
+
+    private Object time(ProceedingJoinPoint jp, String name, String owner) throws Throwable {
+        Timer.Sample sample = Timer.start(registry);
+        String exception = "none";
+        try {
+            return jp.proceed();
+        } catch (Throwable t) {
+            exception = t.getClass().getSimpleName();
+            throw t;
+        } finally {
+            sample.stop(registry.timer(name,
+                    "class", owner,
+                    "method", jp.getSignature().getName(),
+                    "exception", exception));
+        }
+    }
+}
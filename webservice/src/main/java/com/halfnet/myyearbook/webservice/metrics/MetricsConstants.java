@@ -0,0 +1,38 @@
+package com.halfnet.myyearbook.webservice.metrics;
+
+/**
+ * names of the application's metrics, all start with {@code myyb} so that
+ * percentile histograms can be turned on for them together
+ */
+public class MetricsConstants {
+
+    public static final String USER_MANAGER = "myyb.usermanager";
+    public static final String REPOSITORY = "myyb.repository";
+    public static final String AUDIT_BACKLOG = "myyb.audit.backlog";
+    public static final String AUDIT_DROPPED = "myyb.audit.dropped";
+    public static final String AUDIT_EVENTS = "myyb.audit.events";
+    public static final String AUDIT_FAILED = "myyb.audit.failed";
+    public static final String AUDIT_FSYNC = "myyb.audit.fsync";
+    public static final String BCRYPT = "myyb.bcrypt";
+    public static final String BCRYPT_REJECTED = "myyb.bcrypt.rejected";
+    public static final String BCRYPT_QUEUE = "myyb.bcrypt.queue";
+    public static final String BCRYPT_COST = "myyb.bcrypt.cost";
+    public static final String BCRYPT_REHASH = "myyb.bcrypt.rehash";
+    public static final String LOGIN_THROTTLE_REJECTED = "myyb.login.throttle.rejected";
+    public static final String LOGIN_THROTTLE_LIMIT = "myyb.login.throttle.limit";
+    public static final String LOGIN_THROTTLE_KEYS = "myyb.login.throttle.keys";
+    public static final String LOGIN_THROTTLE_SATURATED = "myyb.login.throttle.saturated";
+    public static final String LOOKUP_COALESCED = "myyb.lookup.coalesced";
+    public static final String REVOCATION_APPLIED = "myyb.revocation.applied";
+    public static final String REVOCATION_DELAY = "myyb.revocation.delay";
+    public static final String SESSION_FLUSH = "myyb.session.flush";
+    public static final String SESSION_FLUSHED = "myyb.session.flushed";
+    public static final String STARTUP = "myyb.startup";
+    public static final String TOKEN_LOOKUP = "myyb.token.lookup";
+    public static final String TOKEN_CACHE = "myyb.token.cache";
+    public static final String TOKEN_SIGNED = "myyb.token.signed";
+    public static final String TOKEN_SWEEP = "myyb.token.sweep";
+    public static final String TOKEN_SWEEP_REMOVED = "myyb.token.sweep.removed";
+    public static final String USER_BULK = "myyb.user.bulk";
+
+}
@@ -0,0 +1,120 @@
+package com.halfnet.myyearbook.webservice.metrics;
+
+import com.halfnet.myyearbook.webservice.util.LoggingConstants;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.InstantiationAwareBeanPostProcessor;
+import org.springframework.boot.context.event.ApplicationContextInitializedEvent;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.event.ApplicationPreparedEvent;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.event.ApplicationStartingEvent;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+
+/**
+ * logs how long each phase of startup took, from the JVM starting to the
+ * application being ready for requests, and the beans that took longest to
+ * create including the beans they depend on<br>
+ * must be added to the {@code SpringApplication} before it runs, the first
+ * phases happen before any bean exists. The phases are also recorded in the
+ * {@code myyb.startup} timer
+ */
+public class StartupTimings implements ApplicationListener<ApplicationEvent> {
+
+    private static final int SLOWEST_BEANS = 5;
+
+    private final Log log = LogFactory.getLog(LoggingConstants.MAIN_LOG);
+
+    private final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private long last = jvmStart;
+    // phase -> millis, in order
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private final Map<String, Long> beanStarts = new ConcurrentHashMap<>();
+    private final Map<String, Long> beanMillis = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public StartupTimings() {
+
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (event instanceof ApplicationStartingEvent) {
+            // JVM startup and loading the classes that main needs
+            phase("jvm");
+        } else if (event instanceof ApplicationEnvironmentPreparedEvent) {
+            phase("environment");
+        } else if (event instanceof ApplicationContextInitializedEvent) {
+            ((ApplicationContextInitializedEvent) event).getApplicationContext()
+                    .getBeanFactory().addBeanPostProcessor(new BeanTimer());
+        } else if (event instanceof ApplicationPreparedEvent) {
+            phase("context");
+        } else if (event instanceof ContextRefreshedEvent && !ready) {
+            // the management server's child context is refreshed after the main web server starts
+            if (((ContextRefreshedEvent) event).getApplicationContext().getParent() == null) {
+                phase("beans");
+            }
+        } else if (event instanceof WebServerInitializedEvent && !ready) {
+            boolean management = ((WebServerInitializedEvent) event).getApplicationContext().getParent() != null;
+            phase(management ? "management server" : "web server");
+        } else if (event instanceof ApplicationReadyEvent && !ready) {
+            ready = true;
+            phase("runners");
+            report(((ApplicationReadyEvent) event).getApplicationContext().getBean(MeterRegistry.class));
+        }
+    }
+
+    private void phase(String name) {
+        long now = System.currentTimeMillis();
+        phases.merge(name, now - last, Long::sum);
+        last = now;
+    }
+
+    private void report(MeterRegistry registry) {
+        phases.forEach((phase, millis) -> registry.timer(MetricsConstants.STARTUP, "phase", phase)
+                .record(millis, TimeUnit.MILLISECONDS));
+        String slowest = beanMillis.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(SLOWEST_BEANS)
+                .map(e -> e.getKey() + " " + e.getValue() + "ms")
+                .collect(Collectors.joining(", "));
+        log.info("Ready " + (last - jvmStart) + "ms after the JVM started: "
+                + phases.entrySet().stream()
+                        .map(e -> e.getKey() + " " + e.getValue() + "ms")
+                        .collect(Collectors.joining(", "))
+                + "; slowest beans " + slowest);
+        beanMillis.clear();
+    }
+
+    private class BeanTimer implements InstantiationAwareBeanPostProcessor {
+
+        @Override
+        public Object postProcessBeforeInstantiation(Class<?> beanClass, String beanName) throws BeansException {
+            if (!ready) {
+                beanStarts.put(beanName, System.nanoTime());
+            }
+            return null;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+            Long start = beanStarts.remove(beanName);
+            if (start != null) {
+                beanMillis.put(beanName, (System.nanoTime() - start) / 1000000);
+            }
+            return bean;
+        }
+    }
+}
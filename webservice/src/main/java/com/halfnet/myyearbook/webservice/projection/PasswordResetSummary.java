@@ -0,0 +1,56 @@
+package com.halfnet.myyearbook.webservice.projection;
+
+import com.halfnet.myyearbook.webservice.entity.PasswordReset;
+import java.util.Date;
+
+/**
+ * a pending {@link PasswordReset} and who it is for, without loading the
+ * user
+ */
+public class PasswordResetSummary {
+
+    private final long id;
+    private final long userId;
+    private final String emailAddress;
+    private final String firstname;
+    private final String lastname;
+    private final Date dateAdded;
+
+    public PasswordResetSummary(long id, long userId, String emailAddress, String firstname,
+            String lastname, Date dateAdded) {
+        this.id = id;
+        this.userId = userId;
+        this.emailAddress = emailAddress;
+        this.firstname = firstname;
+        this.lastname = lastname;
+        this.dateAdded = dateAdded;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    /**
+     * @return when the reset was requested, null for resets from before this
+     * was recorded
+     */
+    public Date getDateAdded() {
+        return dateAdded;
+    }
+}
@@ -0,0 +1,107 @@
+package com.halfnet.myyearbook.webservice.projection;
+
+import com.halfnet.myyearbook.webservice.entity.User;
+import java.util.Date;
+
+/**
+ * the owner of a token and when it was issued, without loading the
+ * {@link User} or its associations<br>
+ * tokens stored in {@code myyb_token} expire {@link User#TIMEOUT} after
+ * they were last seen, which {@link #touch} moves forward in memory until
+ * it is written back
+ */
+public class TokenPrincipal {
+
+    private final long tokenId;
+    private final long userId;
+    private final long dateAdded;
+    private volatile long lastSeen;
+    // the last seen time that is in the database
+    private volatile long flushedSeen;
+
+    /**
+     * a token that isn't stored, such as a signed token, which expires a
+     * fixed time after it was issued
+     *
+     * @param userId the owner of the token
+     * @param dateAdded when the token was issued
+     */
+    public TokenPrincipal(long userId, Date dateAdded) {
+        this(0, userId, dateAdded, null);
+    }
+
+    /**
+     * @param tokenId the id of the token's row
+     * @param userId the owner of the token
+     * @param dateAdded when the token was issued
+     * @param lastSeen when the token was last used, null if never
+     */
+    public TokenPrincipal(long tokenId, long userId, Date dateAdded, Date lastSeen) {
+        this.tokenId = tokenId;
+        this.userId = userId;
+        this.dateAdded = dateAdded.getTime();
+        this.lastSeen = lastSeen == null ? this.dateAdded : Math.max(this.dateAdded, lastSeen.getTime());
+        this.flushedSeen = this.lastSeen;
+    }
+
+    /**
+     * @return the id of the token's row, or 0 if the token isn't stored
+     */
+    public long getTokenId() {
+        return tokenId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    public long getDateAdded() {
+        return dateAdded;
+    }
+
+    public long getLastSeen() {
+        return lastSeen;
+    }
+
+    /**
+     * records that the token was used, at most once per resolution so that
+     * most requests only read
+     *
+     * @param now the current time in milliseconds
+     * @param resolution how far apart recorded uses must be in milliseconds
+     */
+    public void touch(long now, long resolution) {
+        if (tokenId != 0 && now - lastSeen >= resolution) {
+            lastSeen = now;
+        }
+    }
+
+    /**
+     * @return true if the token was used since its last seen time was last
+     * written to the database
+     */
+    public boolean isDirty() {
+        return lastSeen > flushedSeen;
+    }
+
+    /**
+     * @param seen the last seen time that was written to the database
+     */
+    public void markFlushed(long seen) {
+        this.flushedSeen = seen;
+    }
+
+    /**
+     * @return the time in milliseconds at which the token stops being valid
+     */
+    public long getExpiresAt() {
+        return lastSeen + User.TIMEOUT;
+    }
+
+    /**
+     * @return true if the token hasn't been used for {@link User#TIMEOUT}
+     */
+    public boolean isExpired() {
+        return System.currentTimeMillis() > getExpiresAt();
+    }
+}
@@ -0,0 +1,61 @@
+package com.halfnet.myyearbook.webservice.projection;
+
+import com.halfnet.myyearbook.webservice.entity.User;
+import org.json.JSONObject;
+
+/**
+ * the basic columns of a {@link User}, without any of its associations
+ */
+public class UserSummary {
+
+    private final long id;
+    private final String firstname;
+    private final String lastname;
+    private final String emailAddress;
+    private final boolean emailConfirmed;
+    private final boolean deleted;
+
+    public UserSummary(long id, String firstname, String lastname, String emailAddress,
+            boolean emailConfirmed, boolean deleted) {
+        this.id = id;
+        this.firstname = firstname;
+        this.lastname = lastname;
+        this.emailAddress = emailAddress;
+        this.emailConfirmed = emailConfirmed;
+        this.deleted = deleted;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getFirstname() {
+        return firstname;
+    }
+
+    public String getLastname() {
+        return lastname;
+    }
+
+    public String getEmailAddress() {
+        return emailAddress;
+    }
+
+    public boolean isEmailConfirmed() {
+        return emailConfirmed;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public JSONObject toJSON() {
+        return new JSONObject()
+                .put("id", id)
+                .put("firstname", firstname)
+                .put("lastname", lastname)
+                .put("emailAddress", emailAddress)
+                .put("emailConfirmed", emailConfirmed)
+                .put("deleted", deleted);
+    }
+}
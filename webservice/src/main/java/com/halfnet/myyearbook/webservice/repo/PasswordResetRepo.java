@@ -2,11 +2,66 @@ package com.halfnet.myyearbook.webservice.repo;
 
 import com.halfnet.myyearbook.webservice.entity.PasswordReset;
 import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.projection.PasswordResetSummary;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface PasswordResetRepo extends CrudRepository<PasswordReset, Long> {
 
-    public PasswordReset findByUser(User u);
+    /**
+     * gets the reset for a user, with its user loaded so it can be used
+     * outside of a transaction
+     *
+     * @param u the user
+     * @return the reset or null if there is none
+     */
+    @Query("select r from PasswordReset r join fetch r.user where r.user = :user")
+    public PasswordReset findByUser(@Param("user") User u);
+
+    /**
+     * loads every reset along with its user, so they can be used outside of
+     * a transaction
+     *
+     * @return every reset
+     */
+    @Query("select r from PasswordReset r join fetch r.user")
+    public List<PasswordReset> findAllWithUser();
+
+    /**
+     * gets the reset for a user, only its foreign key is compared so the
+     * user isn't loaded, and {@link PasswordReset#getUser} can only be used
+     * inside a transaction
+     *
+     * @param userId the id of the user
+     * @return the reset or null if there is none
+     */
+    public PasswordReset findByUserId(long userId);
+
+    /**
+     * deletes the reset of a user if there is one
+     *
+     * @param userId the id of the user
+     */
+    @Transactional
+    public void deleteByUserId(long userId);
+
+    /**
+     * gets the next page of resets after an id, in id order, joined with
+     * the user they belong to
+     *
+     * @param afterId only resets with a greater id are returned
+     * @param page the page size, the page number should be 0
+     * @return the resets
+     */
+    @Query("select new com.halfnet.myyearbook.webservice.projection.PasswordResetSummary("
+            + "r.id, u.id, u.emailAddress, u.firstname, u.lastname, r.dateAdded) "
+            + "from PasswordReset r join r.user u where r.id > :afterId order by r.id")
+    public List<PasswordResetSummary> findSummariesAfter(@Param("afterId") long afterId, Pageable page);
 }
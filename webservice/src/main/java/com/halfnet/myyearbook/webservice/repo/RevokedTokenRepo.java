@@ -0,0 +1,38 @@
+package com.halfnet.myyearbook.webservice.repo;
+
+import com.halfnet.myyearbook.webservice.entity.RevokedToken;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.TemporalType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.Temporal;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+@Transactional(readOnly = true)
+public interface RevokedTokenRepo extends CrudRepository<RevokedToken, Long> {
+
+    public List<RevokedToken> findByExpiresAtAfter(@Temporal(TemporalType.TIMESTAMP) Date now);
+
+    /**
+     * gets the next entries of the log after an id, in id order
+     *
+     * @param afterId only entries with a greater id are returned
+     * @param page the page size, the page number should be 0
+     * @return the entries
+     */
+    public List<RevokedToken> findByIdGreaterThanOrderByIdAsc(long afterId, Pageable page);
+
+    public List<RevokedToken> findByIdIn(Collection<Long> ids);
+
+    /**
+     * @return the id of the newest entry, or null if the log is empty
+     */
+    @Query("select max(r.id) from RevokedToken r")
+    public Long findMaxId();
+
+}
@@ -1,13 +1,89 @@
 package com.halfnet.myyearbook.webservice.repo;
 
 import com.halfnet.myyearbook.webservice.entity.Token;
+import com.halfnet.myyearbook.webservice.projection.TokenPrincipal;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.Date;
+import javax.persistence.TemporalType;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.Temporal;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface TokenRepo extends CrudRepository<Token, Long>{
-    
-    public boolean existsByToken(String token);
-    public Token getByToken(String token);
+
+    public boolean existsByTokenHash(byte[] tokenHash);
+    public boolean existsByUserId(long userId);
+    public Token getByTokenHash(byte[] tokenHash);
+
+    @Query("select new com.halfnet.myyearbook.webservice.projection.TokenPrincipal(t.id, t.user.id, t.dateAdded, t.lastSeen) "
+            + "from Token t where t.tokenHash = :tokenHash")
+    public TokenPrincipal findPrincipalByTokenHash(@Param("tokenHash") byte[] tokenHash);
+
+    /**
+     * checks if a user has any token issued or used after a time, without
+     * loading the user or its tokens
+     *
+     * @param email the normalized email of the user
+     * @param since only tokens added or last seen after this count
+     * @return true if there is such a token
+     */
+    @Query("select count(t) > 0 from Token t join t.user u "
+            + "where u.emailNormalized = :email and (t.dateAdded > :since or t.lastSeen > :since)")
+    public boolean existsActiveByEmail(@Param("email") String email,
+            @Param("since") @Temporal(TemporalType.TIMESTAMP) Date since);
+
+    /**
+     * deletes a token if it belongs to a user
+     *
+     * @param userId the id of the user
+     * @param tokenHash the digest of the token
+     * @return the number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Token t where t.user.id = :userId and t.tokenHash = :tokenHash")
+    public int deleteByUserIdAndTokenHash(@Param("userId") long userId, @Param("tokenHash") byte[] tokenHash);
+
+    /**
+     * deletes a token if it belongs to the user with an email
+     *
+     * @param email the normalized email of the user
+     * @param tokenHash the digest of the token
+     * @return the number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Token t where t.tokenHash = :tokenHash and t.user.id in "
+            + "(select u.id from User u where u.emailNormalized = :email)")
+    public int deleteByEmailAndTokenHash(@Param("email") String email, @Param("tokenHash") byte[] tokenHash);
+
+    /**
+     * deletes a token whoever it belongs to
+     *
+     * @param tokenHash the digest of the token
+     * @return the number of rows deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from Token t where t.tokenHash = :tokenHash")
+    public int deleteByTokenHash(@Param("tokenHash") byte[] tokenHash);
+
+    public default boolean existsByToken(String token) {
+        return existsByTokenHash(Utils.digestToken(token));
+    }
+
+    public default Token getByToken(String token) {
+        return getByTokenHash(Utils.digestToken(token));
+    }
+
+    public default TokenPrincipal findPrincipalByToken(String token) {
+        return findPrincipalByTokenHash(Utils.digestToken(token));
+    }
 
 }
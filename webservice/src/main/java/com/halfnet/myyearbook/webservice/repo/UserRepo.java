@@ -1,11 +1,127 @@
 package com.halfnet.myyearbook.webservice.repo;
 
 import com.halfnet.myyearbook.webservice.entity.User;
+import com.halfnet.myyearbook.webservice.projection.UserSummary;
+import com.halfnet.myyearbook.webservice.util.Utils;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
+@Transactional(readOnly = true)
 public interface UserRepo extends CrudRepository<User,Long>{
-    User findByEmailIgnoreCase(String email);
-    boolean existsByEmailIgnoreCase(String email);
+    /**
+     * gets a reference to a user without querying the database, for setting
+     * associations
+     *
+     * @param id the id of the user
+     * @return a lazy reference to the user
+     */
+    User getOne(Long id);
+
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+        @QueryHint(name = "org.hibernate.cacheRegion", value = "user-by-email")})
+    User findByEmailNormalized(String emailNormalized);
+
+    /**
+     * @param emailNormalized the normalized email
+     * @return the id of the user with the email, or null if there is none
+     */
+    @QueryHints({
+        @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+        @QueryHint(name = "org.hibernate.cacheRegion", value = "user-by-email")})
+    @Query("select u.id from User u where u.emailNormalized = ?1")
+    Long findIdByEmailNormalized(String emailNormalized);
+    boolean existsByEmailNormalized(String emailNormalized);
+
+    default User findByEmailIgnoreCase(String email) {
+        return findByEmailNormalized(Utils.normalizeEmail(email));
+    }
+
+    /**
+     * finds which of some emails are already registered
+     *
+     * @param emails the normalized emails to check
+     * @return the ones that belong to a user
+     */
+    @Query("select u.emailNormalized from User u where u.emailNormalized in :emails")
+    Set<String> findExistingNormalizedEmails(@Param("emails") Collection<String> emails);
+
+    /**
+     * streams the normalized email of every user, must be consumed and
+     * closed inside a transaction
+     *
+     * @return the emails
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("select u.emailNormalized from User u where u.emailNormalized is not null")
+    Stream<String> streamNormalizedEmails();
+
+    /**
+     * loads every user along with their tokens, so they can be used outside
+     * of a transaction
+     *
+     * @return every user
+     */
+    @Query("select distinct u from User u left join fetch u.tokens")
+    List<User> findAllWithTokens();
+
+    /**
+     * gets the next page of users created before the normalized email
+     * existed, in id order
+     *
+     * @param afterId only users with a greater id are returned
+     * @param page the page size, the page number should be 0
+     * @return the ids of the users
+     */
+    @Query("select u.id from User u where u.emailNormalized is null and u.emailAddress is not null "
+            + "and u.id > :afterId order by u.id")
+    List<Long> findIdsToNormalizeAfter(@Param("afterId") long afterId, Pageable page);
+
+    /**
+     * fills in the normalized email of users created before it existed
+     *
+     * @param ids the ids of the users
+     * @return the number of users updated
+     */
+    @Modifying
+    @Transactional
+    @Query("update User u set u.emailNormalized = lower(u.emailAddress) "
+            + "where u.id in :ids and u.emailNormalized is null and u.emailAddress is not null")
+    int normalizeEmails(@Param("ids") Collection<Long> ids);
+
+    /**
+     * gets the next page of users after an id, in id order
+     *
+     * @param afterId only users with a greater id are returned
+     * @param page the page size, the page number should be 0
+     * @return the users
+     */
+    @Query("select new com.halfnet.myyearbook.webservice.projection.UserSummary("
+            + "u.id, u.firstname, u.lastname, u.emailAddress, u.emailConfirmed, u.deleted) "
+            + "from User u where u.id > :afterId order by u.id")
+    List<UserSummary> findSummariesAfter(@Param("afterId") long afterId, Pageable page);
+
+    /**
+     * streams every user in id order, must be consumed and closed inside a
+     * transaction
+     *
+     * @return the users
+     */
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "500"))
+    @Query("select new com.halfnet.myyearbook.webservice.projection.UserSummary("
+            + "u.id, u.firstname, u.lastname, u.emailAddress, u.emailConfirmed, u.deleted) "
+            + "from User u order by u.id")
+    Stream<UserSummary> streamSummaries();
 }
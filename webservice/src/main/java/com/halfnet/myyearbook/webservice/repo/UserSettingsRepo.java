@@ -3,8 +3,26 @@ package com.halfnet.myyearbook.webservice.repo;
 import com.halfnet.myyearbook.webservice.entity.UserSettings;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 @Repository
 public interface UserSettingsRepo extends CrudRepository<UserSettings, Long> {
 
+    /**
+     * gets the settings of a user, only the foreign key is compared so the
+     * user isn't loaded
+     *
+     * @param userId the id of the user
+     * @return the settings or null if there are none
+     */
+    public UserSettings findByUserId(long userId);
+
+    /**
+     * deletes the settings of a user, they are loaded first so the cached
+     * copy is evicted along with them
+     *
+     * @param userId the id of the user
+     */
+    @Transactional
+    public void deleteByUserId(long userId);
 }
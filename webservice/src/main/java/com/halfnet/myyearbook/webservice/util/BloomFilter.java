@@ -0,0 +1,85 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a thread safe Bloom filter of strings<br>
+ * {@link #mightContain} never returns false for a string that was added,
+ * and returns true for a string that wasn't with roughly the false positive
+ * rate it was sized for
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long numBits;
+    private final int numHashes;
+
+    /**
+     * @param expectedItems the number of strings expected to be added
+     * @param falsePositiveRate the wanted false positive rate once that many
+     * strings are added
+     */
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        expectedItems = Math.max(1, expectedItems);
+        long m = (long) Math.ceil(-expectedItems * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        m = Math.max(64, (m + 63) / 64 * 64);
+        this.numBits = m;
+        this.numHashes = Math.max(1, (int) Math.round((double) m / expectedItems * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (m / 64));
+    }
+
+    public void put(String s) {
+        long h = hash(s);
+        long h1 = h;
+        long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long old = bits.get(word);
+            while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+                old = bits.get(word);
+            }
+        }
+    }
+
+    public boolean mightContain(String s) {
+        long h = hash(s);
+        long h1 = h;
+        long h2 = mix(h ^ 0x9e3779b97f4a7c15L) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getNumBits() {
+        return numBits;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    private static long hash(String s) {
+        // FNV-1a over the chars, then mixed so every bit depends on every char
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,127 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * keeps the current time pre-formatted as an HTTP date and as a time of
+ * day, since both only change once a second<br>
+ * the strings are formatted at most once per second per offset, every
+ * other call just reads the last result
+ */
+public class HttpDateClock {
+
+    private static final DateTimeFormatter HTTP_DATE
+            = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter TIME_OF_DAY
+            = DateTimeFormatter.ofPattern("HH:mm:ss", Locale.US).withZone(ZoneId.systemDefault());
+
+    // offsets past this many are formatted on every call instead of cached
+    private static final int MAX_OFFSETS = 32;
+
+    private static volatile Tick current = new Tick(currentSecond(0));
+    private static final ConcurrentHashMap<Long, Tick> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * HttpDateClock cannot be instantiated
+     */
+    private HttpDateClock() {
+    }
+
+    /**
+     * @return the current date and time in HTTP format
+     */
+    public static String httpDate() {
+        return now().httpDate;
+    }
+
+    /**
+     * the current date and time in HTTP format as US-ASCII bytes<br>
+     * the array is shared and must not be modified
+     *
+     * @return the HTTP formatted time
+     */
+    public static byte[] httpDateBytes() {
+        return now().httpDateBytes;
+    }
+
+    /**
+     * the date and time in HTTP format with an offset, for headers such as
+     * {@code Expires}<br>
+     * each distinct offset is cached the same way the current time is
+     *
+     * @param millisAdd the time to add, in milliseconds
+     * @return the HTTP formatted time
+     */
+    public static String httpDate(long millisAdd) {
+        if (millisAdd == 0) {
+            return httpDate();
+        }
+        long second = currentSecond(millisAdd);
+        Tick t = offsets.get(millisAdd);
+        if (t != null && t.second == second) {
+            return t.httpDate;
+        }
+        t = new Tick(second);
+        if (offsets.size() < MAX_OFFSETS || offsets.containsKey(millisAdd)) {
+            offsets.put(millisAdd, t);
+        }
+        return t.httpDate;
+    }
+
+    /**
+     * @return the current local time in the Hour:Minute:Second format
+     */
+    public static String timeOfDay() {
+        return now().timeOfDay;
+    }
+
+    /**
+     * the current local time in the Hour:Minute:Second format as US-ASCII
+     * bytes<br>
+     * the array is shared and must not be modified
+     *
+     * @return the current time
+     */
+    public static byte[] timeOfDayBytes() {
+        return now().timeOfDayBytes;
+    }
+
+    private static Tick now() {
+        long second = currentSecond(0);
+        Tick t = current;
+        if (t.second != second) {
+            // racing threads may both format, they produce the same value
+            t = new Tick(second);
+            current = t;
+        }
+        return t;
+    }
+
+    private static long currentSecond(long millisAdd) {
+        return Math.floorDiv(System.currentTimeMillis() + millisAdd, 1000);
+    }
+
+    private static class Tick {
+
+        private final long second;
+        private final String httpDate;
+        private final byte[] httpDateBytes;
+        private final String timeOfDay;
+        private final byte[] timeOfDayBytes;
+
+        private Tick(long second) {
+            Instant instant = Instant.ofEpochSecond(second);
+            this.second = second;
+            this.httpDate = HTTP_DATE.format(instant);
+            this.httpDateBytes = httpDate.getBytes(StandardCharsets.US_ASCII);
+            this.timeOfDay = TIME_OF_DAY.format(instant);
+            this.timeOfDayBytes = timeOfDay.getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * collapses concurrent loads of the same key into one, every caller that
+ * arrives while a load is in flight waits for it and gets its result<br>
+ * nothing is kept once the load finishes, so this is not a cache
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+    private final Runnable onCoalesced;
+
+    /**
+     * @param onCoalesced called for every caller that waits for a load
+     * another caller started
+     */
+    public SingleFlight(Runnable onCoalesced) {
+        this.onCoalesced = onCoalesced;
+    }
+
+    /**
+     * loads a key, or waits for a load of it that is already in flight
+     *
+     * @param key the key
+     * @param loader loads the value, only called if no load is in flight
+     * @return the value, which is shared with every caller that waited
+     */
+    public V get(K key, Supplier<V> loader) {
+        CompletableFuture<V> f = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, f);
+        if (inFlight != null) {
+            onCoalesced.run();
+            return await(inFlight);
+        }
+        try {
+            V v = loader.get();
+            f.complete(v);
+            return v;
+        } catch (RuntimeException | Error e) {
+            f.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, f);
+        }
+    }
+
+    /**
+     * @return the number of loads in flight
+     */
+    public int size() {
+        return calls.size();
+    }
+
+    private static <V> V await(CompletableFuture<V> f) {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for a lookup", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a lock free count of events over a sliding window<br>
+ * the count of the current fixed window is added to the count of the
+ * previous one weighted by how much of it still overlaps the sliding window,
+ * which is exact for evenly spread events and close otherwise. Both counts
+ * and the window number are packed into a single long so that an event is
+ * one compare and set
+ */
+public class SlidingWindowCounter {
+
+    private static final int COUNT_BITS = 16;
+    private static final long MAX_COUNT = (1L << COUNT_BITS) - 1;
+
+    // window number (32 bits) | previous count (16 bits) | current count (16 bits)
+    private final AtomicLong state = new AtomicLong();
+
+    public SlidingWindowCounter() {
+    }
+
+    /**
+     * records an event
+     *
+     * @param now the current time in milliseconds
+     * @param windowMillis the length of the window
+     * @return the estimated number of events in the window, including this
+     * one
+     */
+    public double increment(long now, long windowMillis) {
+        long window = now / windowMillis;
+        long s;
+        long next;
+        do {
+            s = state.get();
+            next = roll(s, window);
+            if (current(next) < MAX_COUNT) {
+                next++;
+            }
+        } while (s != next && !state.compareAndSet(s, next));
+        return estimate(next, now, windowMillis);
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @param windowMillis the length of the window
+     * @return the estimated number of events in the window
+     */
+    public double get(long now, long windowMillis) {
+        return estimate(roll(state.get(), now / windowMillis), now, windowMillis);
+    }
+
+    /**
+     * forgets every event
+     */
+    public void reset() {
+        state.set(0);
+    }
+
+    private static long roll(long s, long window) {
+        long w = s >>> (2 * COUNT_BITS);
+        long truncated = window & 0xffffffffL;
+        if (w == truncated) {
+            return s;
+        }
+        long previous = ((w + 1) & 0xffffffffL) == truncated ? current(s) : 0;
+        return (truncated << (2 * COUNT_BITS)) | (previous << COUNT_BITS);
+    }
+
+    private static long current(long s) {
+        return s & MAX_COUNT;
+    }
+
+    private static long previous(long s) {
+        return (s >>> COUNT_BITS) & MAX_COUNT;
+    }
+
+    private static double estimate(long s, long now, long windowMillis) {
+        double elapsed = (double) (now % windowMillis) / windowMillis;
+        return previous(s) * (1 - elapsed) + current(s);
+    }
+}
@@ -0,0 +1,117 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * generates random base 64 strings for tokens and password reset codes<br>
+ * every thread has its own CSPRNG and buffers, so generating tokens from
+ * many threads at once doesn't contend on anything
+ */
+public class TokenGenerator {
+
+    private static final char[] ALPHABET
+            = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    /**
+     * TokenGenerator cannot be instantiated
+     */
+    private TokenGenerator() {
+    }
+
+    /**
+     * fills an array with random bytes from this thread's CSPRNG
+     *
+     * @param bytes the array to fill
+     */
+    public static void nextBytes(byte[] bytes) {
+        state.get().random.nextBytes(bytes);
+    }
+
+    /**
+     * generates a random string of base 64 characters, each carrying 6 bits
+     * of randomness
+     *
+     * @param length the number of characters
+     * @return the random string
+     */
+    public static String generate(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("length must be positive [" + length + "]");
+        }
+        State s = state.get();
+        int b = s.take((length + 3) / 4 * 3);
+        byte[] bytes = s.bytes;
+        char[] chars = s.chars(length);
+
+        int c = 0;
+        for (; c < length; b += 3) {
+            int bits = (bytes[b] & 0xff) << 16 | (bytes[b + 1] & 0xff) << 8 | (bytes[b + 2] & 0xff);
+            chars[c++] = ALPHABET[bits >>> 18];
+            if (c < length) {
+                chars[c++] = ALPHABET[(bits >>> 12) & 0x3f];
+            }
+            if (c < length) {
+                chars[c++] = ALPHABET[(bits >>> 6) & 0x3f];
+            }
+            if (c < length) {
+                chars[c++] = ALPHABET[bits & 0x3f];
+            }
+        }
+        return new String(chars, 0, length);
+    }
+
+    private static class State {
+
+        private final SecureRandom random;
+        private byte[] bytes = new byte[0];
+        private char[] chars = new char[0];
+        // bytes before this index have already been handed out
+        private int position;
+
+        private State() {
+            SecureRandom r;
+            try {
+                // DRBG instances don't share state with each other, unlike NativePRNG
+                r = SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                r = new SecureRandom();
+            }
+            this.random = r;
+        }
+
+        /**
+         * reserves random bytes that haven't been used yet, refilling the
+         * buffer when it runs out<br>
+         * the buffer only grows, to the longest request seen, so mixing token
+         * and reset code lengths doesn't reallocate it
+         *
+         * @param count the number of bytes needed
+         * @return the index of the first reserved byte in {@link #bytes}
+         */
+        private int take(int count) {
+            if (bytes.length - position < count) {
+                if (bytes.length < count) {
+                    bytes = new byte[count];
+                }
+                random.nextBytes(bytes);
+                position = 0;
+            }
+            int start = position;
+            position += count;
+            return start;
+        }
+
+        /**
+         * gets the char buffer, growing it if it is shorter than the length
+         */
+        private char[] chars(int length) {
+            if (chars.length < length) {
+                chars = new char[length];
+            }
+            return chars;
+        }
+    }
+}
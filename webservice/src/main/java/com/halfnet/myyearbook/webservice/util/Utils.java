@@ -1,17 +1,25 @@
 package com.halfnet.myyearbook.webservice.util;
 
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.Calendar;
-import java.util.Date;
 import java.util.Locale;
-import java.util.Random;
-import java.util.TimeZone;
 import org.json.JSONObject;
 import org.mindrot.jbcrypt.BCrypt;
 
 public class Utils {
-private static final Random rand = new Random();
+
+    public static final int TOKEN_LENGTH = 256;
+    public static final int PASSWORD_RESET_LENGTH = 8;
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
     /**
      * Utils cannot be instantiated
@@ -34,22 +42,19 @@ private static final Random rand = new Random();
      *
      * @param millisAdd the time to add, in milliseconds
      * @return the HTTP Formatted time
+     * @see HttpDateClock#httpDate(long)
      */
     public static String getHTTPDate(long millisAdd) {
-        Calendar calendar = Calendar.getInstance();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss z", Locale.US);
-        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
-        return dateFormat.format(new Date(calendar.getTimeInMillis() + millisAdd));
+        return HttpDateClock.httpDate(millisAdd);
     }
 
     /**
      * returns the time in the Hour:Minute:Second format
      * @return the current time
+     * @see HttpDateClock#timeOfDay()
      */
     public static String getTimeNoDate() {
-        Calendar calendar = Calendar.getInstance();
-        SimpleDateFormat dateFormat = new SimpleDateFormat("HH:mm:ss", Locale.US);
-        return dateFormat.format(calendar.getTime());
+        return HttpDateClock.timeOfDay();
     }
 
     /**
@@ -71,6 +76,35 @@ private static final Random rand = new Random();
         return BCrypt.gensalt();
     }
 
+    /**
+     * generates a BCrypt salt for a cost
+     *
+     * @param cost the log2 of the number of rounds, 4 to 31
+     * @return the BCrypt salt
+     */
+    public static String genSalt(int cost) {
+        return BCrypt.gensalt(cost);
+    }
+
+    /**
+     * reads the cost a BCrypt hash was made with
+     *
+     * @param hash the password hash
+     * @return the log2 of the number of rounds, or -1 if the hash is not a
+     * BCrypt hash
+     */
+    public static int getCost(String hash) {
+        if (hash == null || hash.length() < 7 || hash.charAt(0) != '$' || hash.charAt(6) != '$') {
+            return -1;
+        }
+        char a = hash.charAt(4);
+        char b = hash.charAt(5);
+        if (a < '0' || a > '9' || b < '0' || b > '9') {
+            return -1;
+        }
+        return (a - '0') * 10 + (b - '0');
+    }
+
     /**
      * checks if a plaintext password matches a hashed password
      * @param pass the plaintext password
@@ -84,12 +118,34 @@ private static final Random rand = new Random();
     /**
      * creates a random token, used for tracking user logins
      *
-     * @return the 256 byte token in base 64
+     * @return the 256 character token in base 64
      */
     public static String generateToken() {
-        byte[] byts = new byte[256];
-        rand.nextBytes(byts);
-        return Base64.getEncoder().encodeToString(byts).substring(0, 256);
+        return TokenGenerator.generate(TOKEN_LENGTH);
+    }
+
+    /**
+     * creates the SHA-256 digest of a token, which is what gets stored and
+     * looked up in the database
+     *
+     * @param token the token
+     * @return the 32 byte digest
+     */
+    public static byte[] digestToken(String token) {
+        MessageDigest md = sha256.get();
+        md.reset();
+        return md.digest(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * normalizes an email for storage and lookups, emails are compared
+     * ignoring case
+     *
+     * @param email the email
+     * @return the lower case email, or null if the email is null
+     */
+    public static String normalizeEmail(String email) {
+        return email == null ? null : email.toLowerCase(Locale.ROOT);
     }
 
     public static String exceptionStackTraceToString(Throwable t) {
@@ -112,6 +168,6 @@ private static final Random rand = new Random();
     }
     
     public static String genPasswordReset(){
-        return generateToken().substring(0,8);
+        return TokenGenerator.generate(PASSWORD_RESET_LENGTH);
     }
 }
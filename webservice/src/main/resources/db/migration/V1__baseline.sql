@@ -0,0 +1,60 @@
+-- The schema as ddl-auto=update left it, after token_digest.sql,
+-- token_last_seen.sql and revoked_token_kind.sql. Databases that already
+-- have these tables are marked as version 1 on their first migrate
+-- (spring.flyway.baseline-on-migrate) and skip this script.
+-- New databases get InnoDB rather than the MyISAM that MySQL5Dialect
+-- creates, so that transactions and foreign keys are enforced.
+
+CREATE TABLE myyb_user (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    deleted BIT,
+    email_address VARCHAR(255),
+    email_confirmed BIT,
+    email_normalized VARCHAR(255),
+    firstname VARCHAR(255),
+    lastname VARCHAR(255),
+    password_hash VARCHAR(255),
+    PRIMARY KEY (id),
+    UNIQUE INDEX ux_myyb_user_email_normalized (email_normalized)
+) ENGINE=InnoDB;
+
+CREATE TABLE myyb_user_settings (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    user_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_myyb_user_settings_user FOREIGN KEY (user_id) REFERENCES myyb_user (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE myyb_token (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    date_added DATETIME NOT NULL,
+    last_seen DATETIME,
+    token_hash BINARY(32) NOT NULL,
+    user_id BIGINT,
+    PRIMARY KEY (id),
+    UNIQUE INDEX ux_myyb_token_token_hash (token_hash),
+    INDEX ix_myyb_token_date_added (date_added),
+    INDEX ix_myyb_token_last_seen (last_seen),
+    CONSTRAINT fk_myyb_token_user FOREIGN KEY (user_id) REFERENCES myyb_user (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE myyb_password_reset (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    date_added DATETIME,
+    new_password VARCHAR(255) NOT NULL,
+    user_id BIGINT,
+    PRIMARY KEY (id),
+    INDEX ix_myyb_password_reset_date_added (date_added),
+    CONSTRAINT fk_myyb_password_reset_user FOREIGN KEY (user_id) REFERENCES myyb_user (id)
+) ENGINE=InnoDB;
+
+CREATE TABLE myyb_revoked_token (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    date_revoked DATETIME NOT NULL,
+    expires_at DATETIME NOT NULL,
+    kind VARCHAR(16),
+    token_hash BINARY(32),
+    user_id BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    INDEX ix_myyb_revoked_token_expires_at (expires_at)
+) ENGINE=InnoDB;
@@ -0,0 +1,8 @@
+-- Adds myyb_revoked_token.kind for the revocation feed, which now also
+-- carries changed users. ddl-auto=update adds the column but leaves it null
+-- on existing rows, which RevokedToken reads as a single token when
+-- token_hash is set and as every token of the user otherwise, so no
+-- backfill is needed.
+
+ALTER TABLE myyb_revoked_token
+    ADD COLUMN kind VARCHAR(16) NULL;
@@ -0,0 +1,15 @@
+-- Moves myyb_token from the 256 character token column to a 32 byte SHA-256
+-- digest (token_hash). Run once against MySQL before deploying the version
+-- that reads token_hash, ddl-auto=update can't backfill or drop columns.
+-- Existing sessions stay valid since the digest is taken of the same token.
+
+ALTER TABLE myyb_token ADD COLUMN token_hash BINARY(32) NULL;
+
+-- repeat until 0 rows are affected, keeps each transaction small on large tables
+UPDATE myyb_token SET token_hash = UNHEX(SHA2(token, 256)) WHERE token_hash IS NULL LIMIT 10000;
+
+ALTER TABLE myyb_token
+    MODIFY token_hash BINARY(32) NOT NULL,
+    ADD UNIQUE INDEX ux_myyb_token_token_hash (token_hash);
+
+ALTER TABLE myyb_token DROP COLUMN token;
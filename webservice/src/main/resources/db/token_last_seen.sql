@@ -0,0 +1,11 @@
+-- Adds myyb_token.last_seen for sliding expiration. ddl-auto=update adds the
+-- column but leaves it null on existing rows, which then expire from
+-- date_added as before. Run the backfill so that TokenSweeper's range scan
+-- on last_seen covers every row.
+
+ALTER TABLE myyb_token
+    ADD COLUMN last_seen DATETIME NULL,
+    ADD INDEX ix_myyb_token_last_seen (last_seen);
+
+-- repeat until 0 rows are affected, keeps each transaction small on large tables
+UPDATE myyb_token SET last_seen = date_added WHERE last_seen IS NULL LIMIT 10000;
@@ -0,0 +1,87 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * offers and drains on one thread, with the user id of every event being
+ * its order
+ */
+public class AuditRingTest {
+
+    private final AuditRing ring = new AuditRing(4);
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOf2() {
+        assertEquals(4, ring.capacity());
+        assertEquals(8, new AuditRing(5).capacity());
+        assertEquals(2, new AuditRing(0).capacity());
+    }
+
+    @Test
+    public void eventsAreDrainedInOrderAcrossTheWrap() {
+        List<Long> drained = new ArrayList<>();
+        for (long i = 1; i <= 3; i++) {
+            assertTrue(offer(i));
+        }
+        assertEquals(2, ring.drain((code, time, userId, address, token) -> drained.add(userId), 2));
+        // the next three take the last slot and the two freed at the start
+        for (long i = 4; i <= 6; i++) {
+            assertTrue(offer(i));
+        }
+        assertEquals(4, ring.size());
+        assertEquals(4, ring.drain((code, time, userId, address, token) -> drained.add(userId), 10));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L), drained);
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void fieldsArePassedThrough() {
+        ring.offer(AuditEvent.LOGOUT.getCode(), 1234, 5, "10.0.0.1", "token");
+        ring.drain((code, time, userId, address, token) -> {
+            assertEquals(AuditEvent.LOGOUT.getCode(), code);
+            assertEquals(1234, time);
+            assertEquals(5, userId);
+            assertEquals("10.0.0.1", address);
+            assertEquals("token", token);
+        }, 1);
+    }
+
+    @Test
+    public void offersToAFullRingAreDroppedAndCounted() {
+        for (long i = 1; i <= 4; i++) {
+            assertTrue(offer(i));
+        }
+        assertFalse(offer(5));
+        assertFalse(offer(6));
+        assertEquals(2, ring.takeDropped());
+        assertEquals(0, ring.takeDropped());
+
+        ring.drain((code, time, userId, address, token) -> { }, 1);
+        assertTrue(offer(7));
+        assertEquals(0, ring.takeDropped());
+    }
+
+    @Test
+    public void eventIsConsumedEvenIfTheHandlerThrows() {
+        offer(1);
+        offer(2);
+        assertThrows(IllegalStateException.class, () -> ring.drain((code, time, userId, address, token) -> {
+            throw new IllegalStateException("bad event");
+        }, 10));
+        assertEquals(1, ring.size());
+        List<Long> drained = new ArrayList<>();
+        ring.drain((code, time, userId, address, token) -> drained.add(userId), 10);
+        assertEquals(List.of(2L), drained);
+    }
+
+    private boolean offer(long userId) {
+        return ring.offer(AuditEvent.TOKEN_ISSUED.getCode(), userId, userId, null, null);
+    }
+}
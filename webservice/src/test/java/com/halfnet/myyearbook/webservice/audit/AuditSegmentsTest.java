@@ -0,0 +1,154 @@
+package com.halfnet.myyearbook.webservice.audit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * writes segments of a header and three records each into a temporary
+ * directory and reads them back with {@link AuditReader}
+ */
+public class AuditSegmentsTest {
+
+    private static final int SEGMENT_SIZE = 4 * AuditRecord.SIZE;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void recordsRoundTrip() throws IOException {
+        byte[] address = InetAddress.getByName("10.1.2.3").getAddress();
+        byte[] digest = new byte[32];
+        Arrays.fill(digest, (byte) 7);
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            segments.append(AuditEvent.PASSWORD_FAILED.getCode(), 1234, 5, address, digest);
+            segments.append(AuditEvent.LOGOUT.getCode(), 1235, 0, null, null);
+        }
+        List<AuditRecord> records = readAll(1);
+
+        assertEquals(2, records.size());
+        AuditRecord r = records.get(0);
+        assertEquals(1, r.getSequence());
+        assertEquals(1234, r.getTime());
+        assertEquals(AuditEvent.PASSWORD_FAILED, r.getEvent());
+        assertEquals(5, r.getUserId());
+        assertEquals(InetAddress.getByName("10.1.2.3"), r.getAddress());
+        assertTrue(r.hasSubject());
+        assertArrayEquals(Arrays.copyOf(digest, AuditRecord.SUBJECT_LENGTH), r.getSubject());
+        r = records.get(1);
+        assertEquals(2, r.getSequence());
+        assertNull(r.getAddress());
+        assertFalse(r.hasSubject());
+    }
+
+    @Test
+    public void fullSegmentsRollOver() throws IOException {
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            append(segments, 7);
+            assertEquals(8, segments.getNextSequence());
+        }
+        List<Path> files = AuditSegments.list(dir);
+        assertEquals(3, files.size());
+        assertEquals("audit-00000000000000000004.seg", files.get(1).getFileName().toString());
+
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L), sequences(readAll(1)));
+        // the first segment is skipped entirely
+        assertEquals(List.of(5L, 6L, 7L), sequences(readAll(5)));
+    }
+
+    @Test
+    public void forceTracksUnwrittenRecords() throws IOException {
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            assertTrue(segments.isDirty());
+            segments.force();
+            assertFalse(segments.isDirty());
+            append(segments, 1);
+            assertTrue(segments.isDirty());
+            segments.force();
+            assertFalse(segments.isDirty());
+        }
+    }
+
+    @Test
+    public void reopeningAppendsAfterTheLastRecord() throws IOException {
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            append(segments, 2);
+        }
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            assertEquals(3, segments.getNextSequence());
+            append(segments, 2);
+        }
+        assertEquals(2, AuditSegments.list(dir).size());
+        assertEquals(List.of(1L, 2L, 3L, 4L), sequences(readAll(1)));
+    }
+
+    @Test
+    public void tornRecordEndsTheLogAndIsOverwritten() throws IOException {
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            append(segments, 3);
+        }
+        Path segment = AuditSegments.list(dir).get(0);
+        // the third record was half written when the process stopped
+        try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.wrap(new byte[] {1, 2, 3}), 3 * AuditRecord.SIZE + 20);
+        }
+        assertEquals(List.of(1L, 2L), sequences(readAll(1)));
+
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            assertEquals(3, segments.getNextSequence());
+            append(segments, 2);
+        }
+        assertEquals(List.of(1L, 2L, 3L, 4L), sequences(readAll(1)));
+    }
+
+    @Test
+    public void segmentCreatedJustBeforeACrashIsResumed() throws IOException {
+        Files.createFile(dir.resolve("audit-00000000000000000009.seg"));
+        try (AuditSegments segments = new AuditSegments(dir, SEGMENT_SIZE)) {
+            assertEquals(9, segments.getNextSequence());
+            append(segments, 1);
+        }
+        assertEquals(List.of(9L), sequences(readAll(1)));
+    }
+
+    @Test
+    public void otherFilesAreRefused() throws IOException {
+        Files.write(dir.resolve("audit-00000000000000000001.seg"), new byte[SEGMENT_SIZE]);
+        Files.write(dir.resolve("audit-00000000000000000002.seg"), "not a segment".getBytes());
+        assertThrows(IOException.class, () -> new AuditSegments(dir, SEGMENT_SIZE));
+    }
+
+    private static void append(AuditSegments segments, int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            segments.append(AuditEvent.TOKEN_ISSUED.getCode(), System.currentTimeMillis(), i, null, null);
+        }
+    }
+
+    private List<AuditRecord> readAll(long fromSequence) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        AuditReader.read(dir, fromSequence, records::add);
+        return records;
+    }
+
+    private static List<Long> sequences(List<AuditRecord> records) {
+        List<Long> ret = new ArrayList<>();
+        records.forEach(r -> ret.add(r.getSequence()));
+        return ret;
+    }
+}
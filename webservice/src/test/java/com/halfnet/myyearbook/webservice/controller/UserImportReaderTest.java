@@ -0,0 +1,121 @@
+package com.halfnet.myyearbook.webservice.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.halfnet.myyearbook.webservice.manager.UserImporter;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * parses imports given as strings, a row that couldn't be parsed has no
+ * fields
+ */
+public class UserImportReaderTest {
+
+    @Test
+    public void plainFieldsAreTrimmedExceptThePassword() {
+        UserImporter.Row r = single(" Ada , Lovelace , ada@example.edu , pass word ");
+        assertEquals("Ada", r.getFirstname());
+        assertEquals("Lovelace", r.getLastname());
+        assertEquals("ada@example.edu", r.getEmail());
+        assertEquals(" pass word ", r.getPassword());
+    }
+
+    @Test
+    public void quotedFieldsMayHoldCommasAndDoubledQuotes() {
+        UserImporter.Row r = single("\"Pat\",\"O\"\"Brien, Jr.\",pat@example.edu,\"a,b\"\"c\"");
+        assertEquals("Pat", r.getFirstname());
+        assertEquals("O\"Brien, Jr.", r.getLastname());
+        assertEquals("pat@example.edu", r.getEmail());
+        assertEquals("a,b\"c", r.getPassword());
+    }
+
+    @Test
+    public void spacesAroundQuotedFieldsAreIgnored() {
+        UserImporter.Row r = single("Pat,  \"O'Brien\"  ,pat@example.edu,pw");
+        assertEquals("O'Brien", r.getLastname());
+        assertEquals("pw", r.getPassword());
+    }
+
+    @Test
+    public void quotesInsideAnUnquotedFieldAreKept() {
+        UserImporter.Row r = single("Pat,O\"Brien,pat@example.edu,pw");
+        assertEquals("O\"Brien", r.getLastname());
+    }
+
+    @Test
+    public void emptyFieldsAreKept() {
+        UserImporter.Row r = single("Pat,,pat@example.edu,");
+        assertEquals("", r.getLastname());
+        assertEquals("", r.getPassword());
+    }
+
+    @Test
+    public void malformedLinesBecomeEmptyRows() {
+        assertInvalid(single("Pat,\"O'Brien,pat@example.edu,pw"));
+        assertInvalid(single("Pat,\"O'Brien\"x,pat@example.edu,pw"));
+        assertInvalid(single("Pat,O'Brien,pat@example.edu"));
+        assertInvalid(single("Pat,O'Brien,pat@example.edu,pw,extra"));
+    }
+
+    @Test
+    public void headerAndBlankLinesAreSkippedAndLinesCounted() {
+        List<UserImporter.Row> rows = read("FirstName,lastname,email,password\n"
+                + "Ada,Lovelace,ada@example.edu,pw1\n"
+                + "\n"
+                + "   \n"
+                + "Pat,Smith,pat@example.edu,pw2\n", false);
+        assertEquals(2, rows.size());
+        assertEquals(2, rows.get(0).getLine());
+        assertEquals("Ada", rows.get(0).getFirstname());
+        assertEquals(5, rows.get(1).getLine());
+        assertEquals("Pat", rows.get(1).getFirstname());
+    }
+
+    @Test
+    public void jsonLinesAreParsed() {
+        List<UserImporter.Row> rows = read("{\"firstname\":\"Ada\",\"lastname\":\"Lovelace\","
+                + "\"email\":\"ada@example.edu\",\"password\":\"a,\\\"b\"}\n"
+                + "not json\n"
+                + "{\"firstname\":\"Pat\"}\n", true);
+        assertEquals(3, rows.size());
+        assertEquals("Lovelace", rows.get(0).getLastname());
+        assertEquals("a,\"b", rows.get(0).getPassword());
+        assertInvalid(rows.get(1));
+        assertEquals("Pat", rows.get(2).getFirstname());
+        assertNull(rows.get(2).getEmail());
+    }
+
+    @Test
+    public void emptyInputHasNoRows() {
+        UserImportReader reader = new UserImportReader(new BufferedReader(new StringReader("")), false);
+        assertFalse(reader.hasNext());
+        assertThrows(NoSuchElementException.class, reader::next);
+    }
+
+    private static UserImporter.Row single(String csv) {
+        List<UserImporter.Row> rows = read(csv, false);
+        assertEquals(1, rows.size());
+        return rows.get(0);
+    }
+
+    private static List<UserImporter.Row> read(String input, boolean json) {
+        List<UserImporter.Row> rows = new ArrayList<>();
+        new UserImportReader(new BufferedReader(new StringReader(input)), json).forEachRemaining(rows::add);
+        return rows;
+    }
+
+    private static void assertInvalid(UserImporter.Row r) {
+        assertNull(r.getFirstname());
+        assertNull(r.getLastname());
+        assertNull(r.getEmail());
+        assertNull(r.getPassword());
+    }
+}
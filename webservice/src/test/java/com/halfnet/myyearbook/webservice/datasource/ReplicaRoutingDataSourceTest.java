@@ -0,0 +1,114 @@
+package com.halfnet.myyearbook.webservice.datasource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * routes through {@link ReplicaDataSourceConfig} to two in memory databases,
+ * each holding a row with its own name
+ */
+public class ReplicaRoutingDataSourceTest {
+
+    private static final String PRIMARY_URL = "jdbc:h2:mem:routing-primary;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_URL = "jdbc:h2:mem:routing-replica;DB_CLOSE_DELAY=-1";
+
+    private final ApplicationContextRunner runner = new ApplicationContextRunner()
+            .withUserConfiguration(ReplicaDataSourceConfig.class, TransactionConfig.class)
+            .withPropertyValues(
+                    "spring.datasource.url=" + PRIMARY_URL,
+                    "webservice.replica.urls=" + REPLICA_URL,
+                    "spring.datasource.hikari.maximum-pool-size=2",
+                    "spring.datasource.hikari.connection-init-sql=SET @init = 'hikari'");
+
+    @BeforeAll
+    public static void createDatabases() throws SQLException {
+        createDatabase(PRIMARY_URL, "primary");
+        createDatabase(REPLICA_URL, "replica");
+    }
+
+    private static void createDatabase(String url, String name) throws SQLException {
+        try (Connection c = DriverManager.getConnection(url, "sa", "");
+                Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE IF NOT EXISTS db_name (name VARCHAR(16))");
+            s.execute("DELETE FROM db_name");
+            s.execute("INSERT INTO db_name VALUES ('" + name + "')");
+        }
+    }
+
+    @Test
+    public void readOnlyTransactionsGoToTheReplica() {
+        runner.run(ctx -> {
+            TransactionTemplate tx = transaction(ctx.getBean(PlatformTransactionManager.class), false);
+            TransactionTemplate readOnly = transaction(ctx.getBean(PlatformTransactionManager.class), true);
+            JdbcTemplate jdbc = new JdbcTemplate(ctx.getBean(DataSource.class));
+
+            assertEquals("primary", tx.execute(status -> dbName(jdbc)));
+            assertEquals("replica", readOnly.execute(status -> dbName(jdbc)));
+            assertEquals("primary", readOnly.execute(status -> ReplicaRoutingDataSource.onPrimary(() -> dbName(jdbc))));
+            // without a transaction the connection is not read only
+            assertEquals("primary", dbName(jdbc));
+        });
+    }
+
+    @Test
+    public void recentWritesAreReadFromThePrimary() {
+        runner.run(ctx -> {
+            TransactionTemplate readOnly = transaction(ctx.getBean(PlatformTransactionManager.class), true);
+            JdbcTemplate jdbc = new JdbcTemplate(ctx.getBean(DataSource.class));
+            ReadYourWrites readYourWrites = new ReadYourWrites(60000, 100);
+
+            assertEquals("replica", readOnly.execute(status -> readYourWrites.read("user:1", () -> dbName(jdbc))));
+            readYourWrites.written("user:1");
+            assertEquals("primary", readOnly.execute(status -> readYourWrites.read("user:1", () -> dbName(jdbc))));
+            assertEquals("replica", readOnly.execute(status -> readYourWrites.read("user:2", () -> dbName(jdbc))));
+        });
+    }
+
+    @Test
+    public void everyPoolGetsTheHikariSettings() {
+        runner.run(ctx -> {
+            TransactionTemplate tx = transaction(ctx.getBean(PlatformTransactionManager.class), false);
+            TransactionTemplate readOnly = transaction(ctx.getBean(PlatformTransactionManager.class), true);
+            JdbcTemplate jdbc = new JdbcTemplate(ctx.getBean(DataSource.class));
+
+            assertEquals("hikari", tx.execute(status -> jdbc.queryForObject("SELECT @init", String.class)));
+            assertEquals("hikari", readOnly.execute(status -> jdbc.queryForObject("SELECT @init", String.class)));
+        });
+    }
+
+    private static String dbName(JdbcTemplate jdbc) {
+        return jdbc.queryForObject("SELECT name FROM db_name", String.class);
+    }
+
+    private static TransactionTemplate transaction(PlatformTransactionManager transactionManager, boolean readOnly) {
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setReadOnly(readOnly);
+        return tx;
+    }
+
+    @Configuration
+    @EnableConfigurationProperties(DataSourceProperties.class)
+    static class TransactionConfig {
+
+        @Bean
+        public DataSourceTransactionManager transactionManager(DataSource dataSource) {
+            return new DataSourceTransactionManager(dataSource);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * fills filters with generated emails
+ */
+public class BloomFilterTest {
+
+    @Test
+    public void addedStringsAreAlwaysFound() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(email(i));
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain(email(i)));
+        }
+    }
+
+    @Test
+    public void falsePositiveRateIsNearWhatItWasSizedFor() {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) {
+            filter.put(email(i));
+        }
+        int falsePositives = 0;
+        for (int i = 10000; i < 110000; i++) {
+            if (filter.mightContain(email(i))) {
+                falsePositives++;
+            }
+        }
+        // 1000 expected
+        assertTrue(falsePositives < 1500, falsePositives + " false positives");
+    }
+
+    @Test
+    public void emptyFilterContainsNothing() {
+        BloomFilter filter = new BloomFilter(100, 0.01);
+        assertFalse(filter.mightContain(email(0)));
+        assertFalse(filter.mightContain(""));
+    }
+
+    @Test
+    public void sizeFollowsTheExpectedItemsAndRate() {
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        // 9.59 bits and 7 hashes per item, rounded up to whole words
+        assertEquals(9600, filter.getNumBits());
+        assertEquals(7, filter.getNumHashes());
+        BloomFilter tiny = new BloomFilter(0, 0.5);
+        assertEquals(64, tiny.getNumBits());
+        assertTrue(tiny.getNumHashes() >= 1);
+    }
+
+    @Test
+    public void concurrentPutsAreNotLost() throws Exception {
+        BloomFilter filter = new BloomFilter(40000, 0.01);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int offset = t * 10000;
+                futures.add(executor.submit(() -> {
+                    for (int i = offset; i < offset + 10000; i++) {
+                        filter.put(email(i));
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < 40000; i++) {
+            assertTrue(filter.mightContain(email(i)));
+        }
+    }
+
+    private static String email(int i) {
+        return "student" + i + "@class2020.example.edu";
+    }
+}
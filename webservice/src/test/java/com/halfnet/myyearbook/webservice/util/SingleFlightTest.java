@@ -0,0 +1,88 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * a leader thread starts a load and holds it until a second thread has
+ * joined it
+ */
+public class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final CountDownLatch joined = new CountDownLatch(1);
+    private final SingleFlight<String, String> flight = new SingleFlight<>(joined::countDown);
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void waitersShareTheLeadersResult() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> flight.get("a", () -> {
+            loads.incrementAndGet();
+            started.countDown();
+            await(joined);
+            return "leader";
+        }));
+        await(started);
+        Future<String> waiter = executor.submit(() -> flight.get("a", () -> {
+            loads.incrementAndGet();
+            return "waiter";
+        }));
+
+        assertEquals("leader", leader.get(5, TimeUnit.SECONDS));
+        assertEquals("leader", waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(0, flight.size());
+    }
+
+    @Test
+    public void leaderFailurePropagatesToWaiters() throws Exception {
+        IllegalStateException failure = new IllegalStateException("lookup failed");
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> flight.get("a", () -> {
+            started.countDown();
+            await(joined);
+            throw failure;
+        }));
+        await(started);
+        Future<String> waiter = executor.submit(() -> flight.get("a", () -> "waiter"));
+
+        assertSame(failure, assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS)).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS)).getCause());
+        // the failed load is not remembered
+        assertEquals(0, flight.size());
+        assertEquals("again", flight.get("a", () -> "again"));
+    }
+
+    @Test
+    public void differentKeysLoadSeparately() {
+        assertEquals("a", flight.get("a", () -> "a"));
+        assertEquals("b", flight.get("b", () -> "b"));
+        assertEquals(1, joined.getCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.halfnet.myyearbook.webservice.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * counts over windows of one second, with the time passed in
+ */
+public class SlidingWindowCounterTest {
+
+    private static final long WINDOW = 1000;
+
+    private final SlidingWindowCounter counter = new SlidingWindowCounter();
+
+    @Test
+    public void countsWithinAWindow() {
+        assertEquals(1, counter.increment(100, WINDOW));
+        assertEquals(2, counter.increment(200, WINDOW));
+        assertEquals(3, counter.increment(999, WINDOW));
+        assertEquals(3, counter.get(999, WINDOW));
+    }
+
+    @Test
+    public void previousWindowIsWeightedByItsOverlap() {
+        for (int i = 0; i < 4; i++) {
+            counter.increment(500, WINDOW);
+        }
+        assertEquals(4, counter.get(1000, WINDOW));
+        assertEquals(2, counter.get(1500, WINDOW));
+        assertEquals(3, counter.increment(1500, WINDOW));
+        assertEquals(1, counter.get(1999, WINDOW), 0.01);
+        // the window after only sees the one event of the second window
+        assertEquals(0.5, counter.get(2500, WINDOW));
+    }
+
+    @Test
+    public void skippedWindowForgetsEverything() {
+        for (int i = 0; i < 4; i++) {
+            counter.increment(500, WINDOW);
+        }
+        assertEquals(0, counter.get(2000, WINDOW));
+        assertEquals(1, counter.increment(2000, WINDOW));
+    }
+
+    @Test
+    public void countSaturatesWithoutOverflowing() {
+        for (int i = 0; i < 70000; i++) {
+            counter.increment(0, WINDOW);
+        }
+        assertEquals(65535, counter.get(0, WINDOW));
+        // carried into the previous count intact, not into the window number
+        assertEquals(65535, counter.get(1000, WINDOW));
+        assertEquals(65536, counter.increment(1000, WINDOW));
+    }
+
+    @Test
+    public void windowNumbersWrapAround() {
+        long now = (1L << 32) * WINDOW;
+        counter.increment(now - 1, WINDOW);
+        assertEquals(1, counter.get(now, WINDOW));
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws Exception {
+        int threads = 4;
+        int each = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < each; i++) {
+                        counter.increment(0, WINDOW);
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(threads * each, counter.get(0, WINDOW));
+    }
+
+    @Test
+    public void resetForgetsEverything() {
+        counter.increment(0, WINDOW);
+        counter.reset();
+        assertEquals(0, counter.get(0, WINDOW));
+        assertEquals(0, counter.get(1000, WINDOW));
+    }
+}